@@ -0,0 +1,43 @@
+plugins {
+    id("java")
+    id("me.champeau.jmh") version "0.7.3"
+    id("com.google.protobuf") version "0.9.5"
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+repositories {
+    mavenCentral()
+}
+
+// the benchmarks also run the messages of the tests of the library
+evaluationDependsOn(":")
+val libraryTests = project(":").the<SourceSetContainer>()["test"]
+
+dependencies {
+    jmh(project(":"))
+    jmh(libraryTests.output)
+    jmh("com.google.protobuf:protobuf-java:4.29.3")
+    jmhAnnotationProcessor(project(":processor"))
+}
+
+protobuf {
+    protoc {
+        artifact = "com.google.protobuf:protoc:4.29.3"
+    }
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
+
+// the payloads hold non-ASCII strings, which must not depend on the default charset
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
@@ -0,0 +1,94 @@
+package org.lagrangecore.proto.benchmark;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes, deserializes and sizes each {@link Payload} with proto-anno, and with the equivalent protoc-generated
+ * message for comparison.
+ * <p>
+ * A protoc-generated message keeps its serialized size once computed, so {@link #protobufComputeSize()} and
+ * {@link #protobufSerialize()} run with the size already known, as proto-anno does for frozen messages only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param
+    public Payload payload;
+
+    private ProtoMessage message;
+    private ProtobufSerializer<ProtoMessage> serializer;
+    private ProtobufDeserializer<ProtoMessage> deserializer;
+    private byte[] bytes;
+
+    private Parser<? extends Message> parser;
+    private Message protobufMessage;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws InvalidProtocolBufferException {
+        var messageClass = (Class<ProtoMessage>) payload.messageClass;
+        message = payload.create();
+        serializer = ProtobufSerializer.of(messageClass);
+        deserializer = ProtobufDeserializer.of(messageClass);
+        bytes = serializer.serialize(message);
+
+        parser = payload.parser;
+        protobufMessage = parser.parseFrom(bytes);
+        if (!Arrays.equals(bytes, protobufMessage.toByteArray())) {
+            throw new IllegalStateException("protoc and proto-anno encode " + payload + " differently");
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(message);
+    }
+
+    @Benchmark
+    public ProtoMessage deserialize() {
+        return deserializer.deserialize(bytes);
+    }
+
+    @Benchmark
+    public int computeSize() {
+        return serializer.sizeOf(message);
+    }
+
+    @Benchmark
+    public byte[] protobufSerialize() {
+        return protobufMessage.toByteArray();
+    }
+
+    @Benchmark
+    public Message protobufDeserialize() throws InvalidProtocolBufferException {
+        return parser.parseFrom(bytes);
+    }
+
+    @Benchmark
+    public int protobufComputeSize() {
+        return protobufMessage.getSerializedSize();
+    }
+}
@@ -0,0 +1,68 @@
+package org.lagrangecore.proto.benchmark;
+
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.annotations.ProtoField;
+
+import java.util.List;
+
+/**
+ * A chat message as sent over the network: a header and a list of nested elements.
+ */
+public class Packet extends ProtoMessage {
+    @ProtoField(1)
+    public Header header;
+
+    @ProtoField(2)
+    public List<Element> elements;
+
+    @ProtoField(3)
+    public byte[] signature;
+
+    public static class Header extends ProtoMessage {
+        @ProtoField(1)
+        public long sequence;
+
+        @ProtoField(2)
+        public int command;
+
+        @ProtoField(3)
+        public String service;
+
+        @ProtoField(4)
+        public long sender;
+
+        @ProtoField(5)
+        public long receiver;
+
+        @ProtoField(6)
+        public long timestamp;
+    }
+
+    public static class Element extends ProtoMessage {
+        @ProtoField(1)
+        public String text;
+
+        @ProtoField(2)
+        public Image image;
+
+        @ProtoField(3)
+        public long mention;
+    }
+
+    public static class Image extends ProtoMessage {
+        @ProtoField(1)
+        public String url;
+
+        @ProtoField(2)
+        public int width;
+
+        @ProtoField(3)
+        public int height;
+
+        @ProtoField(4)
+        public byte[] md5;
+
+        @ProtoField(5)
+        public long size;
+    }
+}
@@ -0,0 +1,151 @@
+package org.lagrangecore.proto.benchmark;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.benchmark.pb.Messages;
+import org.lagrangecore.proto.test.GeneralTestMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The messages the benchmarks run on, each with the parser of its protoc-generated counterpart. The contents are
+ * fixed, so that results can be compared from one run to the next.
+ */
+public enum Payload {
+    /**
+     * {@link GeneralTestMessage} with the values of {@code GeneralTest}.
+     */
+    GENERAL(GeneralTestMessage.class, Messages.GeneralTestMessage.parser()) {
+        @Override
+        ProtoMessage create() {
+            return GeneralTestMessage.builder()
+                    .intField(42)
+                    .doubleField(0.5)
+                    .stringField("Hello, World!")
+                    .booleanField(true)
+                    .intListField(IntList.of(1, 2, 3, 4, 5))
+                    .doubleListField(DoubleList.of(0.1, 0.2, 0.3, 0.4, 0.5))
+                    .nestedMessageField(List.of(
+                            GeneralTestMessage.NestedMessage.builder()
+                                    .nestedStringListField(List.of("Hello", "World"))
+                                    .build(),
+                            GeneralTestMessage.NestedMessage.builder()
+                                    .nestedStringListField(List.of("Goodbye", "World"))
+                                    .build()
+                    ))
+                    .build();
+        }
+    },
+
+    /**
+     * A {@link Packet} of 16 elements, three levels deep.
+     */
+    NESTED(Packet.class, Messages.Packet.parser()) {
+        @Override
+        ProtoMessage create() {
+            var packet = new Packet();
+            packet.header = new Packet.Header();
+            packet.header.sequence = 1_000_123;
+            packet.header.command = 0x1b5;
+            packet.header.service = "MessageSvc.PbSendMsg";
+            packet.header.sender = 123_456_789;
+            packet.header.receiver = 987_654_321;
+            packet.header.timestamp = 1_700_000_000_000L;
+            packet.elements = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                var element = new Packet.Element();
+                element.text = "Element " + i + ": hello, 世界";
+                element.image = new Packet.Image();
+                element.image.url = "https://example.com/images/" + (0x5f3759df + i) + ".png";
+                element.image.width = 1080;
+                element.image.height = 1920 + i;
+                element.image.md5 = bytes(16, i);
+                element.image.size = 123_456L * (i + 1);
+                element.mention = 10_000 + i;
+                packet.elements.add(element);
+            }
+            packet.signature = bytes(64, 7);
+            return packet;
+        }
+    },
+
+    /**
+     * {@link Samples} of 256 points, in packed fields of every width.
+     */
+    PACKED(Samples.class, Messages.Samples.parser()) {
+        @Override
+        ProtoMessage create() {
+            var samples = new Samples();
+            samples.series = "cpu.usage.host-01";
+            samples.timestamps = new LongArrayList();
+            samples.deltas = new IntArrayList();
+            samples.values = new DoubleArrayList();
+            samples.flags = new IntArrayList();
+            samples.valid = new BooleanArrayList();
+            for (int i = 0; i < 256; i++) {
+                samples.timestamps.add(1_700_000_000_000L + i * 15_000L);
+                samples.deltas.add((i % 7 - 3) * (i + 1));
+                samples.values.add(Math.sin(i / 16.0) * 100);
+                samples.flags.add(i * 0x01000193);
+                samples.valid.add(i % 5 != 0);
+            }
+            return samples;
+        }
+    },
+
+    /**
+     * A {@link Profile} of about 4 KiB of text, ASCII and not.
+     */
+    STRINGS(Profile.class, Messages.Profile.parser()) {
+        @Override
+        ProtoMessage create() {
+            var profile = new Profile();
+            profile.id = 1_234_567_890_123L;
+            profile.nickname = "Lagrange 拉格朗日";
+            profile.signature = "Per aspera ad astra. 路漫漫其修远兮，吾将上下而求索。 🌌✨ ".repeat(8);
+            profile.tags = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                profile.tags.add("tag-" + i + (i % 2 == 0 ? "-astronomy" : "-天文"));
+            }
+            profile.city = "Zürich";
+            profile.friends = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                var friend = new Profile.Friend();
+                friend.id = 10_000_000L + i;
+                friend.remark = "Friend #" + i + " from the observatory";
+                friend.group = i % 3 == 0 ? "Colleagues" : "同学";
+                profile.friends.add(friend);
+            }
+            return profile;
+        }
+    };
+
+    final Class<? extends ProtoMessage> messageClass;
+    final Parser<? extends Message> parser;
+
+    Payload(Class<? extends ProtoMessage> messageClass, Parser<? extends Message> parser) {
+        this.messageClass = messageClass;
+        this.parser = parser;
+    }
+
+    /**
+     * @return a new proto-anno message with the contents of the payload
+     */
+    abstract ProtoMessage create();
+
+    private static byte[] bytes(int length, int seed) {
+        var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed * 31 + i * 17);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,40 @@
+package org.lagrangecore.proto.benchmark;
+
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.annotations.ProtoField;
+
+import java.util.List;
+
+/**
+ * A user profile, made mostly of strings.
+ */
+public class Profile extends ProtoMessage {
+    @ProtoField(1)
+    public long id;
+
+    @ProtoField(2)
+    public String nickname;
+
+    @ProtoField(3)
+    public String signature;
+
+    @ProtoField(4)
+    public List<String> tags;
+
+    @ProtoField(5)
+    public String city;
+
+    @ProtoField(6)
+    public List<Friend> friends;
+
+    public static class Friend extends ProtoMessage {
+        @ProtoField(1)
+        public long id;
+
+        @ProtoField(2)
+        public String remark;
+
+        @ProtoField(3)
+        public String group;
+    }
+}
@@ -0,0 +1,35 @@
+package org.lagrangecore.proto.benchmark;
+
+import it.unimi.dsi.fastutil.booleans.BooleanList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.annotations.FieldType;
+import org.lagrangecore.proto.annotations.ProtoField;
+import org.lagrangecore.proto.annotations.TypeMappedTo;
+
+/**
+ * A batch of monitoring samples, made mostly of packed numbers.
+ */
+public class Samples extends ProtoMessage {
+    @ProtoField(1)
+    public String series;
+
+    @ProtoField(2)
+    public LongList timestamps;
+
+    @ProtoField(3)
+    @TypeMappedTo(FieldType.SINT32)
+    public IntList deltas;
+
+    @ProtoField(4)
+    public DoubleList values;
+
+    @ProtoField(5)
+    @TypeMappedTo(FieldType.FIXED32)
+    public IntList flags;
+
+    @ProtoField(6)
+    public BooleanList valid;
+}
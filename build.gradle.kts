@@ -18,11 +18,13 @@ repositories {
 
 dependencies {
     implementation("com.google.protobuf:protobuf-java:4.29.3")
+    implementation("org.ow2.asm:asm:9.7.1")
     api("it.unimi.dsi:fastutil:8.5.15")
     api("org.jetbrains:annotations:24.0.0")
 
     testCompileOnly("org.projectlombok:lombok:1.18.36")
     testAnnotationProcessor("org.projectlombok:lombok:1.18.36")
+    testAnnotationProcessor(project(":processor"))
 }
 
 tasks.test {
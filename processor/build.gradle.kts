@@ -0,0 +1,49 @@
+plugins {
+    id("java-library")
+    id("maven-publish")
+}
+
+group = rootProject.group
+version = rootProject.version
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    compileOnly("org.jetbrains:annotations:24.0.0")
+
+    testImplementation(rootProject)
+    testImplementation("com.google.protobuf:protobuf-java:4.29.3")
+}
+
+// the test is a main method, which compiles a message with the processor and throws if the codec disagrees
+val processorTest by tasks.registering(JavaExec::class) {
+    description = "Runs ProcessorTest."
+    group = "verification"
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.lagrangecore.proto.processor.ProcessorTest")
+}
+
+tasks.test {
+    dependsOn(processorTest)
+    failOnNoDiscoveredTests = false
+}
+
+publishing {
+    publications {
+        create<MavenPublication>("mavenJava") {
+            groupId = project.group.toString()
+            version = project.version.toString()
+            artifactId = rootProject.name + "-processor"
+
+            from(components["java"])
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package org.lagrangecore.proto.processor;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the source of the codec of one message class.
+ */
+final class CodecWriter {
+    private static final String CODED_OUTPUT_STREAM = "com.google.protobuf.CodedOutputStream";
+    private static final String SIZE_STACK = "org.lagrangecore.proto.SizeStack";
+    private static final String CODED_INPUT_STREAM = "com.google.protobuf.CodedInputStream";
+    private static final String BYTE_STRING = "com.google.protobuf.ByteString";
+    private static final String PROTO_CODEC = "org.lagrangecore.proto.ProtoCodec";
+    private static final String SERIALIZER = "org.lagrangecore.proto.ProtobufSerializer";
+    private static final String DESERIALIZER = "org.lagrangecore.proto.ProtobufDeserializer";
+
+    private final TypeElement message;
+    private final List<FieldModel> fields;
+
+    /**
+     * Whether the codec calls the no-argument constructor of the message directly instead of through a handle.
+     */
+    private final boolean directConstructor;
+    private final String packageName;
+    private final String codecName;
+    private final String messageName;
+    private final StringBuilder source = new StringBuilder();
+    private int indent = 0;
+
+    CodecWriter(TypeElement message, List<FieldModel> fields, boolean directConstructor) {
+        this.message = message;
+        this.fields = fields;
+        this.directConstructor = directConstructor;
+
+        Element element = message;
+        var flatName = new StringBuilder();
+        while (element instanceof TypeElement type) {
+            flatName.insert(0, flatName.isEmpty() ? type.getSimpleName() : type.getSimpleName() + "_");
+            element = type.getEnclosingElement();
+        }
+        this.packageName = ((PackageElement) element).getQualifiedName().toString();
+        this.codecName = flatName + "Codec";
+        this.messageName = message.getQualifiedName().toString();
+    }
+
+    String codecQualifiedName() {
+        return packageName.isEmpty() ? codecName : packageName + "." + codecName;
+    }
+
+    void write(Filer filer) throws IOException {
+        writeClass();
+        try (var writer = filer.createSourceFile(codecQualifiedName(), message).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private void writeClass() {
+        if (!packageName.isEmpty()) {
+            line("package " + packageName + ";");
+            line("");
+        }
+        line("@javax.annotation.processing.Generated(\"" + ProtoCodecProcessor.class.getName() + "\")");
+        open("public final class " + codecName + " extends " + PROTO_CODEC + "<" + messageName + ">");
+        writeHandles();
+        writeHolders();
+        writeComputeSize();
+        line("");
+        writeSerialize();
+        line("");
+        writeReadField();
+        line("");
+        writeNewMessage();
+        close();
+    }
+
+    private void writeHandles() {
+        boolean any = false;
+        if (!directConstructor) {
+            line("private static final java.lang.invoke.MethodHandle CONSTRUCTOR = constructorHandle("
+                    + "java.lang.invoke.MethodHandles.lookup(), " + messageName + ".class);");
+            any = true;
+        }
+        for (var field : fields) {
+            var arguments = "(java.lang.invoke.MethodHandles.lookup(), " + messageName + ".class, \""
+                    + field.name() + "\");";
+            if (field.isPrivate()) {
+                line("private static final java.lang.invoke.VarHandle " + handleName(field)
+                        + " = fieldHandle" + arguments);
+                any = true;
+            }
+            if (field.isFinal()) {
+                line("private static final java.lang.invoke.MethodHandle " + setterName(field)
+                        + " = finalFieldSetter" + arguments);
+                any = true;
+            }
+        }
+        if (any) {
+            line("");
+        }
+    }
+
+    private void writeHolders() {
+        var messageFields = fields.stream().filter(field -> field.kind() == FieldKind.MESSAGE).toList();
+        if (messageFields.isEmpty()) {
+            return;
+        }
+        open("private static final class Serializers");
+        for (var field : messageFields) {
+            line("static final " + SERIALIZER + "<" + field.messageType() + "> " + holderName(field)
+                    + " = " + SERIALIZER + ".of(" + field.messageType() + ".class);");
+        }
+        close();
+        line("");
+        open("private static final class Deserializers");
+        for (var field : messageFields) {
+            line("static final " + DESERIALIZER + "<" + field.messageType() + "> " + holderName(field)
+                    + " = " + DESERIALIZER + ".of(" + field.messageType() + ".class);");
+        }
+        close();
+        line("");
+    }
+
+    private void writeComputeSize() {
+        line("@Override");
+        open("protected int computeSize(" + messageName + " message, " + SIZE_STACK + " sizes)");
+        line("int size = 0;");
+        for (var field : fields) {
+            var kind = field.kind();
+            var tagSize = field.tagSize();
+            if (!field.repeated()) {
+                if (kind.isScalar()) {
+                    if (kind.fixedSize > 0) {
+                        line("size += " + (tagSize + kind.fixedSize) + ";");
+                    } else {
+                        line("size += " + tagSize + " + " + computeSize(kind, read(field)) + ";");
+                    }
+                    continue;
+                }
+                open("");
+                line("var value = " + read(field) + ";");
+                open("if (" + presenceCheck(kind, "value") + ")");
+                writeValueSize(field, "value");
+                close();
+                close();
+                continue;
+            }
+
+            open("");
+            line("var list = " + read(field) + ";");
+            open("if (list != null && !list.isEmpty())");
+            if (!kind.isScalar()) {
+                open("for (var value : list)");
+                writeValueSize(field, "value");
+                close();
+            } else if (field.packed()) {
+                if (kind.fixedSize > 0) {
+                    line("int length = " + times("list.size()", kind.fixedSize) + ";");
+                } else {
+                    line("int length = 0;");
+                    open("for (int i = 0, n = list.size(); i < n; i++)");
+                    line("length += " + computeSize(kind, listElement(kind)) + ";");
+                    close();
+                    line("pushLength(sizes, length);");
+                }
+                line("size += " + tagSize + " + " + CODED_OUTPUT_STREAM
+                        + ".computeUInt32SizeNoTag(length) + length;");
+            } else if (kind.fixedSize > 0) {
+                line("size += " + times("list.size()", tagSize + kind.fixedSize) + ";");
+            } else {
+                line("size += " + times("list.size()", tagSize) + ";");
+                open("for (int i = 0, n = list.size(); i < n; i++)");
+                line("size += " + computeSize(kind, listElement(kind)) + ";");
+                close();
+            }
+            close();
+            close();
+        }
+        line("return size;");
+        close();
+    }
+
+    private void writeValueSize(FieldModel field, String value) {
+        if (field.kind() == FieldKind.MESSAGE) {
+            line("int length = sizeOf(Serializers." + holderName(field) + ", " + value + ", sizes);");
+            line("size += " + field.tagSize() + " + " + CODED_OUTPUT_STREAM
+                    + ".computeUInt32SizeNoTag(length) + length;");
+        } else {
+            line("size += " + field.tagSize() + " + " + computeSize(field.kind(), value) + ";");
+        }
+    }
+
+    private void writeSerialize() {
+        line("@Override");
+        open("protected void serialize(" + messageName + " message, " + CODED_OUTPUT_STREAM
+                + " out, " + SIZE_STACK + " sizes) throws java.io.IOException");
+        for (var field : fields) {
+            var kind = field.kind();
+            if (!field.repeated()) {
+                if (kind.isScalar()) {
+                    writeTag(field.tag(kind.wireType));
+                    line("out.write" + kind.codedName + "NoTag(" + read(field) + ");");
+                    continue;
+                }
+                open("");
+                line("var value = " + read(field) + ";");
+                open("if (" + presenceCheck(kind, "value") + ")");
+                writeTag(field.tag(kind.wireType));
+                writeValue(field, "value");
+                close();
+                close();
+                continue;
+            }
+
+            open("");
+            line("var list = " + read(field) + ";");
+            open("if (list != null && !list.isEmpty())");
+            if (!kind.isScalar()) {
+                open("for (var value : list)");
+                writeTag(field.tag(kind.wireType));
+                writeValue(field, "value");
+                close();
+            } else if (field.packed()) {
+                writeTag(field.tag(FieldKind.WIRETYPE_LENGTH_DELIMITED));
+                line(kind.fixedSize > 0
+                        ? "out.writeUInt32NoTag(" + times("list.size()", kind.fixedSize) + ");"
+                        : "out.writeUInt32NoTag(nextLength(sizes));");
+                open("for (int i = 0, n = list.size(); i < n; i++)");
+                line("out.write" + kind.codedName + "NoTag(" + listElement(kind) + ");");
+                close();
+            } else {
+                open("for (int i = 0, n = list.size(); i < n; i++)");
+                writeTag(field.tag(kind.wireType));
+                line("out.write" + kind.codedName + "NoTag(" + listElement(kind) + ");");
+                close();
+            }
+            close();
+            close();
+        }
+        close();
+    }
+
+    private void writeValue(FieldModel field, String value) {
+        if (field.kind() == FieldKind.MESSAGE) {
+            line("writeMessageNoTag(Serializers." + holderName(field) + ", " + value + ", out, sizes);");
+        } else {
+            line("out.write" + field.kind().codedName + "NoTag(" + value + ");");
+        }
+    }
+
+    private void writeTag(int tag) {
+        do {
+            int b = tag & 0x7F;
+            tag >>>= 7;
+            line("out.writeRawByte(" + (tag == 0 ? b : b | 0x80) + ");");
+        } while (tag != 0);
+    }
+
+    private void writeReadField() {
+        line("@Override");
+        open("protected boolean readField(" + messageName + " message, " + CODED_INPUT_STREAM
+                + " in, " + BYTE_STRING + " source, int tag) throws java.io.IOException");
+        open("switch (tag)");
+        for (var field : fields) {
+            var kind = field.kind();
+            if (!field.repeated()) {
+                line("case " + field.tag(kind.wireType) + " -> " + write(field, readValue(field)));
+                continue;
+            }
+
+            open("case " + field.tag(kind.wireType) + " ->");
+            writeListInit(field);
+            line("list.add(" + readValue(field) + ");");
+            close();
+            if (kind.isScalar() && kind.wireType != FieldKind.WIRETYPE_LENGTH_DELIMITED) {
+                open("case " + field.tag(FieldKind.WIRETYPE_LENGTH_DELIMITED) + " ->");
+                line("var list = " + read(field) + ";");
+                line("var packed = readPacked" + kind.codedName + "(in, list);");
+                open("if (packed != list)");
+                line(write(field, "packed"));
+                close();
+                close();
+            }
+        }
+        open("default ->");
+        line("return false;");
+        close();
+        close();
+        line("return true;");
+        close();
+    }
+
+    private void writeNewMessage() {
+        line("@Override");
+        open("protected " + messageName + " newMessage()");
+        line(directConstructor
+                ? "return new " + messageName + "();"
+                : "return (" + messageName + ") construct(CONSTRUCTOR);");
+        close();
+    }
+
+    private void writeListInit(FieldModel field) {
+        var kind = field.kind();
+        line("var list = " + read(field) + ";");
+        open("if (list == null)");
+        line("list = new " + (kind.isScalar()
+                ? kind.fastutilPackage() + "." + kind.fastutilName() + "ArrayList()"
+                : "java.util.ArrayList<>()") + ";");
+        line(write(field, "list"));
+        close();
+    }
+
+    private static String read(FieldModel field) {
+        return field.isPrivate()
+                ? "((" + field.typeName() + ") " + handleName(field) + ".get(message))"
+                : "message." + field.name();
+    }
+
+    private static String write(FieldModel field, String value) {
+        if (field.isFinal()) {
+            return "setFinal(" + setterName(field) + ", message, " + value + ");";
+        }
+        if (field.isPrivate()) {
+            return handleName(field) + ".set(message, " + value + ");";
+        }
+        return "message." + field.name() + " = " + value + ";";
+    }
+
+    private static String readValue(FieldModel field) {
+        if (field.kind() == FieldKind.MESSAGE) {
+            if (field.lazy()) {
+                return "readLazy(Deserializers." + holderName(field) + ", in)";
+            }
+            // a singular message is decoded into the current one if clear() kept it
+            return "readMessage(Deserializers." + holderName(field) + ", in, source"
+                    + (field.repeated() ? "" : ", " + read(field)) + ")";
+        }
+        return "in.read" + field.kind().codedName + "()";
+    }
+
+    private static String computeSize(FieldKind kind, String value) {
+        return CODED_OUTPUT_STREAM + ".compute" + kind.codedName + "SizeNoTag(" + value + ")";
+    }
+
+    private static String presenceCheck(FieldKind kind, String value) {
+        return switch (kind) {
+            case STRING -> value + " != null && !" + value + ".isEmpty()";
+            case BYTES -> value + " != null && " + value + ".length != 0";
+            default -> value + " != null";
+        };
+    }
+
+    private static String times(String expression, int factor) {
+        return factor == 1 ? expression : expression + " * " + factor;
+    }
+
+    private static String listElement(FieldKind kind) {
+        return "list.get" + kind.fastutilName() + "(i)";
+    }
+
+    private static String holderName(FieldModel field) {
+        return "FIELD_" + field.number();
+    }
+
+    private static String handleName(FieldModel field) {
+        return "HANDLE_" + field.number();
+    }
+
+    private static String setterName(FieldModel field) {
+        return "SETTER_" + field.number();
+    }
+
+    private void open(String header) {
+        line(header.isEmpty() ? "{" : header + " {");
+        indent++;
+    }
+
+    private void close() {
+        indent--;
+        line("}");
+    }
+
+    private void line(String text) {
+        if (!text.isEmpty()) {
+            source.append("    ".repeat(indent)).append(text);
+        }
+        source.append('\n');
+    }
+}
@@ -0,0 +1,83 @@
+package org.lagrangecore.proto.processor;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The protobuf field types, named after the constants of {@code org.lagrangecore.proto.annotations.FieldType}.
+ */
+enum FieldKind {
+    INT32("int", "Int32", FieldKind.WIRETYPE_VARINT, 0),
+    INT64("long", "Int64", FieldKind.WIRETYPE_VARINT, 0),
+    UINT32("int", "UInt32", FieldKind.WIRETYPE_VARINT, 0),
+    UINT64("long", "UInt64", FieldKind.WIRETYPE_VARINT, 0),
+    SINT32("int", "SInt32", FieldKind.WIRETYPE_VARINT, 0),
+    SINT64("long", "SInt64", FieldKind.WIRETYPE_VARINT, 0),
+    FIXED32("int", "Fixed32", FieldKind.WIRETYPE_FIXED32, 4),
+    FIXED64("long", "Fixed64", FieldKind.WIRETYPE_FIXED64, 8),
+    SFIXED32("int", "SFixed32", FieldKind.WIRETYPE_FIXED32, 4),
+    SFIXED64("long", "SFixed64", FieldKind.WIRETYPE_FIXED64, 8),
+    FLOAT("float", "Float", FieldKind.WIRETYPE_FIXED32, 4),
+    DOUBLE("double", "Double", FieldKind.WIRETYPE_FIXED64, 8),
+    BOOL("boolean", "Bool", FieldKind.WIRETYPE_VARINT, 1),
+    STRING(null, "String", FieldKind.WIRETYPE_LENGTH_DELIMITED, 0),
+    BYTES(null, "ByteArray", FieldKind.WIRETYPE_LENGTH_DELIMITED, 0),
+    MESSAGE(null, null, FieldKind.WIRETYPE_LENGTH_DELIMITED, 0),
+    ;
+
+    static final int WIRETYPE_VARINT = 0;
+    static final int WIRETYPE_FIXED64 = 1;
+    static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    static final int WIRETYPE_FIXED32 = 5;
+
+    /**
+     * The Java primitive type holding the value, or {@code null} for non-scalar kinds.
+     */
+    final @Nullable String primitive;
+
+    /**
+     * The name used by the {@code writeXxxNoTag}, {@code computeXxxSizeNoTag} and {@code readXxx} methods
+     * of {@code CodedOutputStream} and {@code CodedInputStream}.
+     */
+    final @Nullable String codedName;
+
+    final int wireType;
+
+    /**
+     * The encoded size of a value in bytes, or {@code 0} if the size depends on the value.
+     */
+    final int fixedSize;
+
+    FieldKind(@Nullable String primitive, @Nullable String codedName, int wireType, int fixedSize) {
+        this.primitive = primitive;
+        this.codedName = codedName;
+        this.wireType = wireType;
+        this.fixedSize = fixedSize;
+    }
+
+    boolean isScalar() {
+        return primitive != null;
+    }
+
+    static @Nullable FieldKind inferFromPrimitive(String primitive) {
+        return switch (primitive) {
+            case "int" -> INT32;
+            case "long" -> INT64;
+            case "float" -> FLOAT;
+            case "double" -> DOUBLE;
+            case "boolean" -> BOOL;
+            default -> null;
+        };
+    }
+
+    /**
+     * @return the capitalized name of the primitive type, as used in the names of fastutil types and methods
+     */
+    String fastutilName() {
+        assert primitive != null;
+        return Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1);
+    }
+
+    String fastutilPackage() {
+        return "it.unimi.dsi.fastutil." + primitive + "s";
+    }
+}
@@ -0,0 +1,47 @@
+package org.lagrangecore.proto.processor;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@code @ProtoField}-annotated field as seen by the code generator.
+ *
+ * @param name        the name of the Java field
+ * @param number      the protobuf field number
+ * @param kind        the protobuf field type
+ * @param repeated    whether the field is a list
+ * @param packed      whether the field is encoded as a packed repeated field
+ * @param messageType the canonical name of the message class for {@link FieldKind#MESSAGE} fields
+ * @param lazy        whether the field is a {@code Lazy} of the message class
+ * @param typeName    the source name of the Java field type, including type arguments
+ * @param isPrivate   whether the field is private and has to be accessed through a {@code VarHandle}
+ * @param isFinal     whether the field is final and has to be written through a setter handle
+ */
+record FieldModel(
+        String name,
+        int number,
+        FieldKind kind,
+        boolean repeated,
+        boolean packed,
+        @Nullable String messageType,
+        boolean lazy,
+        String typeName,
+        boolean isPrivate,
+        boolean isFinal
+) {
+    int tag(int wireType) {
+        return (number << 3) | wireType;
+    }
+
+    int tagSize() {
+        return varintSize(tag(0));
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
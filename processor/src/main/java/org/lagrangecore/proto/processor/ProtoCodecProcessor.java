@@ -0,0 +1,373 @@
+package org.lagrangecore.proto.processor;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Generates a reflection-free {@code ProtoCodec} for every {@code ProtoMessage} subclass with
+ * {@code @ProtoField}-annotated fields, and optionally the reflection metadata of these classes for GraalVM
+ * {@code native-image}.
+ */
+@SupportedAnnotationTypes(ProtoCodecProcessor.PROTO_FIELD)
+@SupportedOptions(ProtoCodecProcessor.NATIVE_IMAGE_OPTION)
+public final class ProtoCodecProcessor extends AbstractProcessor {
+    static final String PROTO_MESSAGE = "org.lagrangecore.proto.ProtoMessage";
+    static final String LAZY = "org.lagrangecore.proto.Lazy";
+    static final String PROTO_FIELD = "org.lagrangecore.proto.annotations.ProtoField";
+    static final String TYPE_MAPPED_TO = "org.lagrangecore.proto.annotations.TypeMappedTo";
+    static final String DISABLE_PACKING = "org.lagrangecore.proto.annotations.DisablePacking";
+
+    /**
+     * The directory under {@code META-INF/native-image} to write {@code reflect-config.json} to, e.g.
+     * {@code com.example/app}. Nothing is written if the option is not set.
+     */
+    static final String NATIVE_IMAGE_OPTION = "protoanno.nativeImage";
+
+    private final Set<String> generated = new HashSet<>();
+    private final Set<String> registered = new HashSet<>();
+    private final ReflectConfigWriter reflectConfig = new ReflectConfigWriter();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        var protoMessage = processingEnv.getElementUtils().getTypeElement(PROTO_MESSAGE);
+        if (protoMessage == null) {
+            return false;
+        }
+        var nativeImageDirectory = processingEnv.getOptions().get(NATIVE_IMAGE_OPTION);
+        if (roundEnv.processingOver()) {
+            if (nativeImageDirectory != null) {
+                try {
+                    reflectConfig.write(processingEnv.getFiler(), nativeImageDirectory);
+                } catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Cannot write reflect-config.json: " + e.getMessage());
+                }
+            }
+            return false;
+        }
+
+        var messages = new LinkedHashSet<TypeElement>();
+        for (var annotation : annotations) {
+            for (var element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.FIELD
+                        && element.getEnclosingElement() instanceof TypeElement type) {
+                    messages.add(type);
+                }
+            }
+        }
+
+        for (var message : messages) {
+            if (!isProtoMessage(message.asType(), protoMessage)) {
+                continue;
+            }
+            if (nativeImageDirectory != null) {
+                registerForReflection(message, protoMessage);
+            }
+            if (!isAccessible(message)) {
+                continue;
+            }
+            var fields = collectFields(message, protoMessage);
+            if (fields == null) {
+                continue;
+            }
+            var writer = new CodecWriter(message, fields, hasAccessibleConstructor(message));
+            if (!generated.add(writer.codecQualifiedName())) {
+                continue;
+            }
+            try {
+                writer.write(processingEnv.getFiler());
+                if (nativeImageDirectory != null) {
+                    reflectConfig.addCodec(writer.codecQualifiedName());
+                }
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Cannot write " + writer.codecQualifiedName() + ": " + e.getMessage(), message);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Register a message class and the classes of the messages nested in it, which are not seen otherwise if they
+     * have no field of their own.
+     */
+    private void registerForReflection(TypeElement message, TypeElement protoMessage) {
+        var binaryName = processingEnv.getElementUtils().getBinaryName(message).toString();
+        if (!registered.add(binaryName)) {
+            return;
+        }
+        var finalFields = new ArrayList<String>();
+        for (var field : ElementFilter.fieldsIn(message.getEnclosedElements())) {
+            if (findAnnotation(field, PROTO_FIELD) == null) {
+                continue;
+            }
+            if (field.getModifiers().contains(Modifier.FINAL)) {
+                finalFields.add(field.getSimpleName().toString());
+            }
+            if (field.asType() instanceof DeclaredType declaredType) {
+                // the message itself, or the element of a List or Lazy
+                var candidates = new ArrayList<TypeMirror>(declaredType.getTypeArguments());
+                candidates.add(declaredType);
+                for (var candidate : candidates) {
+                    if (candidate instanceof DeclaredType nested && isProtoMessage(nested, protoMessage)) {
+                        registerForReflection((TypeElement) nested.asElement(), protoMessage);
+                    }
+                }
+            }
+        }
+        reflectConfig.addMessage(binaryName, finalFields);
+    }
+
+    private boolean isProtoMessage(TypeMirror type, TypeElement protoMessage) {
+        var types = processingEnv.getTypeUtils();
+        return types.isAssignable(types.erasure(type), types.erasure(protoMessage.asType()));
+    }
+
+    private boolean isAccessible(TypeElement message) {
+        if (!message.getTypeParameters().isEmpty()) {
+            warn(message, "generic message classes are not supported");
+            return false;
+        }
+        Element element = message;
+        while (element instanceof TypeElement type) {
+            if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                warn(message, "the class or one of its enclosing classes is private");
+                return false;
+            }
+            if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+                warn(message, "local and anonymous classes are not supported");
+                return false;
+            }
+            element = type.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the codec can call the no-argument constructor of the message class directly, which it looks
+     * up through a method handle otherwise
+     */
+    private static boolean hasAccessibleConstructor(TypeElement message) {
+        var modifiers = message.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT)
+                || message.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+            return false;
+        }
+        for (var constructor : ElementFilter.constructorsIn(message.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private @Nullable List<FieldModel> collectFields(TypeElement message, TypeElement protoMessage) {
+        var fields = new ArrayList<FieldModel>();
+        boolean valid = true;
+        for (var field : ElementFilter.fieldsIn(message.getEnclosedElements())) {
+            var protoField = findAnnotation(field, PROTO_FIELD);
+            if (protoField == null) {
+                continue;
+            }
+            var model = analyzeField(field, (Integer) annotationValue(protoField), protoMessage);
+            if (model == null) {
+                valid = false;
+            } else {
+                fields.add(model);
+            }
+        }
+        return valid ? fields : null;
+    }
+
+    private @Nullable FieldModel analyzeField(VariableElement field, int number, TypeElement protoMessage) {
+        var type = field.asType();
+        var typeMappedTo = findAnnotation(field, TYPE_MAPPED_TO);
+        var mappedKind = typeMappedTo == null ? null
+                : FieldKind.valueOf(((VariableElement) annotationValue(typeMappedTo)).getSimpleName().toString());
+        boolean packed = findAnnotation(field, DISABLE_PACKING) == null;
+
+        if (type.getKind().isPrimitive()) {
+            var primitive = type.getKind().name().toLowerCase(Locale.ROOT);
+            var kind = checkScalar(field, FieldKind.inferFromPrimitive(primitive), mappedKind, primitive);
+            return kind == null ? null : model(field, number, kind, false, false, null);
+        }
+
+        if (isByteArray(type)) {
+            var kind = checkNonScalar(field, FieldKind.BYTES, mappedKind);
+            return kind == null ? null : model(field, number, kind, false, false, null);
+        }
+
+        if (type instanceof DeclaredType declaredType) {
+            var typeName = ((TypeElement) declaredType.asElement()).getQualifiedName().toString();
+            if (typeName.equals("java.lang.String")) {
+                var kind = checkNonScalar(field, FieldKind.STRING, mappedKind);
+                return kind == null ? null : model(field, number, kind, false, false, null);
+            }
+
+            for (var primitive : List.of("int", "long", "float", "double", "boolean")) {
+                var inferred = FieldKind.inferFromPrimitive(primitive);
+                assert inferred != null;
+                if (typeName.equals(inferred.fastutilPackage() + "." + inferred.fastutilName() + "List")) {
+                    var kind = checkScalar(field, inferred, mappedKind, primitive);
+                    return kind == null ? null : model(field, number, kind, true, packed, null);
+                }
+            }
+
+            if (typeName.equals("java.util.List")) {
+                if (declaredType.getTypeArguments().size() != 1) {
+                    error(field, "raw lists are not supported");
+                    return null;
+                }
+                var elementType = declaredType.getTypeArguments().get(0);
+                if (isByteArray(elementType)) {
+                    var kind = checkNonScalar(field, FieldKind.BYTES, mappedKind);
+                    return kind == null ? null : model(field, number, kind, true, false, null);
+                }
+                if (elementType instanceof DeclaredType declaredElementType) {
+                    var elementName = ((TypeElement) declaredElementType.asElement()).getQualifiedName().toString();
+                    if (elementName.equals("java.lang.String")) {
+                        var kind = checkNonScalar(field, FieldKind.STRING, mappedKind);
+                        return kind == null ? null : model(field, number, kind, true, false, null);
+                    }
+                    if (isProtoMessage(elementType, protoMessage)) {
+                        var kind = checkNonScalar(field, FieldKind.MESSAGE, mappedKind);
+                        return kind == null ? null : model(field, number, kind, true, false, elementName);
+                    }
+                }
+                error(field, "unsupported element type " + elementType + "; use fastutil lists for primitives");
+                return null;
+            }
+
+            if (typeName.equals(LAZY)) {
+                if (declaredType.getTypeArguments().size() == 1
+                        && declaredType.getTypeArguments().get(0) instanceof DeclaredType messageType
+                        && isProtoMessage(messageType, protoMessage)) {
+                    var messageName = ((TypeElement) messageType.asElement()).getQualifiedName().toString();
+                    var kind = checkNonScalar(field, FieldKind.MESSAGE, mappedKind);
+                    return kind == null ? null : model(field, number, kind, false, false, messageName, true);
+                }
+                error(field, "Lazy fields must be of a message type");
+                return null;
+            }
+
+            if (isProtoMessage(type, protoMessage)) {
+                var kind = checkNonScalar(field, FieldKind.MESSAGE, mappedKind);
+                return kind == null ? null : model(field, number, kind, false, false, typeName);
+            }
+        }
+
+        error(field, "unsupported field type " + type);
+        return null;
+    }
+
+    private FieldModel model(VariableElement field, int number, FieldKind kind,
+                             boolean repeated, boolean packed, @Nullable String messageType) {
+        return model(field, number, kind, repeated, packed, messageType, false);
+    }
+
+    private FieldModel model(VariableElement field, int number, FieldKind kind,
+                             boolean repeated, boolean packed, @Nullable String messageType, boolean lazy) {
+        var modifiers = field.getModifiers();
+        return new FieldModel(field.getSimpleName().toString(), number, kind, repeated, packed, messageType, lazy,
+                sourceName(field.asType()), modifiers.contains(Modifier.PRIVATE), modifiers.contains(Modifier.FINAL));
+    }
+
+    private static String sourceName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return type.getKind().name().toLowerCase(Locale.ROOT);
+        }
+        if (type instanceof ArrayType arrayType) {
+            return sourceName(arrayType.getComponentType()) + "[]";
+        }
+        var declaredType = (DeclaredType) type;
+        var name = ((TypeElement) declaredType.asElement()).getQualifiedName().toString();
+        if (declaredType.getTypeArguments().isEmpty()) {
+            return name;
+        }
+        var arguments = new StringJoiner(", ", "<", ">");
+        for (var argument : declaredType.getTypeArguments()) {
+            arguments.add(sourceName(argument));
+        }
+        return name + arguments;
+    }
+
+    private @Nullable FieldKind checkScalar(
+            VariableElement field, @Nullable FieldKind inferred, @Nullable FieldKind mapped, String primitive) {
+        if (mapped == null) {
+            if (inferred == null) {
+                error(field, "unsupported field type " + primitive);
+            }
+            return inferred;
+        }
+        if (!primitive.equals(mapped.primitive)) {
+            error(field, primitive + " cannot be mapped to " + mapped);
+            return null;
+        }
+        return mapped;
+    }
+
+    private @Nullable FieldKind checkNonScalar(VariableElement field, FieldKind inferred, @Nullable FieldKind mapped) {
+        if (mapped != null && mapped != inferred) {
+            error(field, field.asType() + " cannot be mapped to " + mapped);
+            return null;
+        }
+        return inferred;
+    }
+
+    private static boolean isByteArray(TypeMirror type) {
+        return type instanceof ArrayType arrayType && arrayType.getComponentType().getKind() == TypeKind.BYTE;
+    }
+
+    private static @Nullable AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (var mirror : element.getAnnotationMirrors()) {
+            var annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static @Nullable Object annotationValue(AnnotationMirror mirror) {
+        for (var entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value")) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private void warn(Element element, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "proto-anno: no codec generated, " + reason + "; falling back to reflection", element);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "proto-anno: " + message, element);
+    }
+}
@@ -0,0 +1,71 @@
+package org.lagrangecore.proto.processor;
+
+import javax.annotation.processing.Filer;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Writes the {@code reflect-config.json} that GraalVM {@code native-image} needs to create serializers and
+ * deserializers at runtime: every message class with its declared fields and no-argument constructor, and every
+ * generated codec with its constructor.
+ * <p>
+ * Classes are collected over all rounds and written once processing is over, sorted by name so that the output does
+ * not depend on the order classes are processed in.
+ */
+final class ReflectConfigWriter {
+    /**
+     * The entry of each class by binary name.
+     */
+    private final Map<String, String> entries = new TreeMap<>();
+
+    /**
+     * @param binaryName  the binary name of the message class
+     * @param finalFields the names of its final {@code @ProtoField} fields, which are written through reflection
+     */
+    void addMessage(String binaryName, List<String> finalFields) {
+        var entry = new StringBuilder()
+                .append("    \"name\": ").append(quote(binaryName)).append(",\n")
+                .append("    \"allDeclaredFields\": true,\n");
+        if (!finalFields.isEmpty()) {
+            var fields = new StringJoiner(",\n", "    \"fields\": [\n", "\n    ],\n");
+            for (var field : finalFields) {
+                fields.add("      { \"name\": " + quote(field) + ", \"allowWrite\": true }");
+            }
+            entry.append(fields);
+        }
+        entry.append("    \"methods\": [ { \"name\": \"<init>\", \"parameterTypes\": [] } ]");
+        entries.put(binaryName, entry.toString());
+    }
+
+    /**
+     * @param binaryName the binary name of the generated codec
+     */
+    void addCodec(String binaryName) {
+        entries.put(binaryName, "    \"name\": " + quote(binaryName) + ",\n"
+                + "    \"methods\": [ { \"name\": \"<init>\", \"parameterTypes\": [] } ]");
+    }
+
+    /**
+     * @param directory the directory under {@code META-INF/native-image} to write to
+     */
+    void write(Filer filer, String directory) throws IOException {
+        var json = new StringJoiner(",\n", "[\n", "\n]\n");
+        for (var entry : entries.values()) {
+            json.add("  {\n" + entry + "\n  }");
+        }
+        var file = filer.createResource(StandardLocation.CLASS_OUTPUT, "",
+                "META-INF/native-image/" + directory + "/reflect-config.json");
+        try (var writer = file.openWriter()) {
+            writer.write(json.toString());
+        }
+    }
+
+    private static String quote(String value) {
+        // Java names hold neither quotes nor backslashes
+        return "\"" + value + "\"";
+    }
+}
@@ -0,0 +1,173 @@
+package org.lagrangecore.proto.processor;
+
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Compiles a message with the processor and checks that the generated codec and the reflective path produce the
+ * same bytes, and decode each other's.
+ */
+public final class ProcessorTest {
+    private static final String MESSAGE_NAME = "org.lagrangecore.proto.processor.test.ProcessorTestMessage";
+
+    private static final String MESSAGE_SOURCE = """
+            package org.lagrangecore.proto.processor.test;
+
+            import it.unimi.dsi.fastutil.ints.IntArrayList;
+            import it.unimi.dsi.fastutil.ints.IntList;
+            import it.unimi.dsi.fastutil.longs.LongArrayList;
+            import it.unimi.dsi.fastutil.longs.LongList;
+            import org.lagrangecore.proto.Lazy;
+            import org.lagrangecore.proto.ProtoMessage;
+            import org.lagrangecore.proto.annotations.DisablePacking;
+            import org.lagrangecore.proto.annotations.FieldType;
+            import org.lagrangecore.proto.annotations.ProtoField;
+            import org.lagrangecore.proto.annotations.TypeMappedTo;
+
+            import java.util.List;
+
+            public class ProcessorTestMessage extends ProtoMessage {
+                @ProtoField(1) public int intField;
+                @ProtoField(2) @TypeMappedTo(FieldType.SINT64) public long sint64Field;
+                @ProtoField(3) @TypeMappedTo(FieldType.FIXED32) public int fixed32Field;
+                @ProtoField(4) public float floatField;
+                @ProtoField(5) public double doubleField;
+                @ProtoField(6) public boolean booleanField;
+                @ProtoField(7) public String stringField;
+                @ProtoField(8) public byte[] bytesField;
+                @ProtoField(9) public IntList packedIntListField;
+                @ProtoField(10) @DisablePacking public LongList unpackedLongListField;
+                @ProtoField(11) public List<String> stringListField;
+                @ProtoField(12) public Nested nestedField;
+                @ProtoField(13) public List<Nested> nestedListField;
+                @ProtoField(14) public Lazy<Nested> lazyField;
+                @ProtoField(15) private int privateField;
+
+                public static class Nested extends ProtoMessage {
+                    @ProtoField(1) public String name;
+                    @ProtoField(2) @TypeMappedTo(FieldType.SINT32) public int value;
+
+                    // created by the codec through a method handle
+                    private Nested() {
+                    }
+                }
+
+                public static ProtoMessage sample() {
+                    var sample = new ProcessorTestMessage();
+                    sample.intField = -42;
+                    sample.sint64Field = -1L << 40;
+                    sample.fixed32Field = 0xcafebabe;
+                    sample.floatField = 0.25f;
+                    sample.doubleField = -1.5;
+                    sample.booleanField = true;
+                    sample.stringField = "Hello, World!";
+                    sample.bytesField = new byte[]{1, 2, 3};
+                    sample.packedIntListField = IntArrayList.of(1, -2, 300);
+                    sample.unpackedLongListField = LongArrayList.of(4L, 1L << 50);
+                    sample.stringListField = List.of("Hello", "World");
+                    sample.nestedField = nested("nested", -7);
+                    sample.nestedListField = List.of(nested("first", 1), nested("second", -2));
+                    sample.lazyField = Lazy.of(nested("lazy", 3));
+                    sample.privateField = 99;
+                    return sample;
+                }
+
+                private static Nested nested(String name, int value) {
+                    var nested = new Nested();
+                    nested.name = name;
+                    nested.value = value;
+                    return nested;
+                }
+            }
+            """;
+
+    public static void main(String[] args) throws Exception {
+        // the class without a codec is then encoded through reflection rather than a hidden class
+        System.setProperty("org.lagrangecore.proto.hiddenClasses", "false");
+
+        var directory = Files.createTempDirectory("proto-anno-processor-test");
+        var withCodec = compile(directory.resolve("codec"), true);
+        var withoutCodec = compile(directory.resolve("reflection"), false);
+        if (!Files.exists(withCodec.resolve("org/lagrangecore/proto/processor/test/ProcessorTestMessageCodec.class"))
+                || !Files.exists(withCodec.resolve(
+                        "org/lagrangecore/proto/processor/test/ProcessorTestMessage_NestedCodec.class"))) {
+            throw new AssertionError("No codec was generated in " + withCodec);
+        }
+
+        try (var codecLoader = loaderOf(withCodec); var reflectionLoader = loaderOf(withoutCodec)) {
+            var codecClass = messageClass(codecLoader);
+            var reflectionClass = messageClass(reflectionLoader);
+
+            var codecBytes = ProtobufSerializer.of(codecClass).serialize(sample(codecClass));
+            var reflectionBytes = ProtobufSerializer.of(reflectionClass).serialize(sample(reflectionClass));
+            System.out.println("Serialized message: " + HexFormat.of().formatHex(codecBytes));
+            assertSameBytes("serialize", reflectionBytes, codecBytes);
+
+            var decodedByCodec = ProtobufDeserializer.of(codecClass).deserialize(reflectionBytes);
+            assertSameBytes("codec decoding reflection", reflectionBytes,
+                    ProtobufSerializer.of(codecClass).serialize(decodedByCodec));
+            var decodedByReflection = ProtobufDeserializer.of(reflectionClass).deserialize(codecBytes);
+            assertSameBytes("reflection decoding codec", codecBytes,
+                    ProtobufSerializer.of(reflectionClass).serialize(decodedByReflection));
+        }
+    }
+
+    private static Path compile(Path output, boolean process) throws IOException {
+        Files.createDirectories(output);
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        var source = new SimpleJavaFileObject(
+                URI.create("string:///" + MESSAGE_NAME.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return MESSAGE_SOURCE;
+            }
+        };
+        var options = List.of(
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", output.toString(),
+                "-s", output.toString());
+        var task = compiler.getTask(null, null, diagnostics, options, null, List.of(source));
+        task.setProcessors(process ? List.of(new ProtoCodecProcessor()) : List.of());
+        if (!task.call()) {
+            throw new AssertionError("Compilation failed: " + diagnostics.getDiagnostics());
+        }
+        return output;
+    }
+
+    private static URLClassLoader loaderOf(Path directory) throws IOException {
+        return new URLClassLoader(new URL[]{directory.toUri().toURL()},
+                ProcessorTest.class.getClassLoader());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<ProtoMessage> messageClass(ClassLoader loader) throws ClassNotFoundException {
+        return (Class<ProtoMessage>) Class.forName(MESSAGE_NAME, true, loader);
+    }
+
+    private static ProtoMessage sample(Class<ProtoMessage> clazz) throws ReflectiveOperationException {
+        return (ProtoMessage) clazz.getMethod("sample").invoke(null);
+    }
+
+    private static void assertSameBytes(String what, byte[] expected, byte[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + HexFormat.of().formatHex(expected)
+                    + " but got " + HexFormat.of().formatHex(actual));
+        }
+    }
+}
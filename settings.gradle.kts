@@ -1,2 +1,4 @@
 rootProject.name = "proto-anno"
 
+include("processor")
+include("benchmark")
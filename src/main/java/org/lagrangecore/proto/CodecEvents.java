@@ -0,0 +1,153 @@
+package org.lagrangecore.proto;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JDK Flight Recorder events of proto-anno. They are recorded only while a recording enables them, and cost
+ * next to nothing otherwise.
+ * <p>
+ * Loading an event class starts up part of the recorder, so this class is used only through {@link CodecMetrics}
+ * once the recorder is running, and hands out events typed as {@code Object}, which keeps the event classes out of the
+ * signatures its callers are verified against.
+ * <p>
+ * A serialize or deserialize call is recorded only if it takes at least the number of milliseconds given by the
+ * system property {@code org.lagrangecore.proto.jfr.thresholdMillis}, 10 by default, or reads or writes at least the
+ * number of bytes given by {@code org.lagrangecore.proto.jfr.thresholdBytes}, 1 MiB by default.
+ */
+final class CodecEvents {
+    private static final long THRESHOLD_NANOS
+            = TimeUnit.MILLISECONDS.toNanos(Long.getLong("org.lagrangecore.proto.jfr.thresholdMillis", 10));
+
+    private static final long THRESHOLD_BYTES
+            = Long.getLong("org.lagrangecore.proto.jfr.thresholdBytes", 1 << 20);
+
+    // checked before an event is allocated, so that calls made while an event is disabled allocate nothing
+    private static final EventType SERIALIZE = EventType.getEventType(SerializeEvent.class);
+    private static final EventType DESERIALIZE = EventType.getEventType(DeserializeEvent.class);
+    private static final EventType BUILD = EventType.getEventType(CodecBuiltEvent.class);
+
+    private CodecEvents() {
+    }
+
+    /**
+     * @return a begun event, or {@code null} if the event is disabled
+     */
+    static @Nullable Object beginSerialize() {
+        if (!SERIALIZE.isEnabled()) {
+            return null;
+        }
+        var event = new SerializeEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return a begun event, or {@code null} if the event is disabled
+     */
+    static @Nullable Object beginDeserialize() {
+        if (!DESERIALIZE.isEnabled()) {
+            return null;
+        }
+        var event = new DeserializeEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return a begun event, or {@code null} if the event is disabled
+     */
+    static @Nullable Object beginBuild() {
+        if (!BUILD.isEnabled()) {
+            return null;
+        }
+        var event = new CodecBuiltEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commit a serialize or deserialize event if the call is slow or large enough.
+     *
+     * @param nanos the time the call took, measured along with the event
+     */
+    static void commitCall(Object event, Class<? extends ProtoMessage> clazz, int bytes, long nanos) {
+        var call = (CallEvent) event;
+        if ((nanos >= THRESHOLD_NANOS || bytes >= THRESHOLD_BYTES) && call.shouldCommit()) {
+            call.messageClass = clazz;
+            call.bytes = bytes;
+            call.commit();
+        }
+    }
+
+    /**
+     * Commit a build event.
+     *
+     * @param codec          {@code "serializer"} or {@code "deserializer"}
+     * @param implementation how messages are encoded or decoded
+     * @param fieldCount     the number of fields of the message class
+     */
+    static void commitBuild(Object event, Class<?> clazz, String codec, String implementation, int fieldCount) {
+        var built = (CodecBuiltEvent) event;
+        if (built.shouldCommit()) {
+            built.messageClass = clazz;
+            built.codec = codec;
+            built.implementation = implementation;
+            built.fieldCount = fieldCount;
+            built.commit();
+        }
+    }
+
+    @Name("org.lagrangecore.proto.CodecBuilt")
+    @Label("Codec Built")
+    @Description("A serializer or deserializer was created for a message class")
+    @Category("proto-anno")
+    @StackTrace(false)
+    static final class CodecBuiltEvent extends Event {
+        @Label("Message Class")
+        Class<?> messageClass;
+
+        @Label("Codec")
+        @Description("Serializer or deserializer")
+        String codec;
+
+        @Label("Implementation")
+        @Description("How messages are encoded or decoded: by a generated codec, a hidden class or reflection")
+        String implementation;
+
+        @Label("Field Count")
+        int fieldCount;
+    }
+
+    abstract static class CallEvent extends Event {
+        @Label("Message Class")
+        Class<?> messageClass;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.lagrangecore.proto.Serialize")
+    @Label("Serialize")
+    @Description("A message took long to serialize, or was large")
+    @Category("proto-anno")
+    static final class SerializeEvent extends CallEvent {
+    }
+
+    @Name("org.lagrangecore.proto.Deserialize")
+    @Label("Deserialize")
+    @Description("A message took long to deserialize, or was large")
+    @Category("proto-anno")
+    static final class DeserializeEvent extends CallEvent {
+    }
+}
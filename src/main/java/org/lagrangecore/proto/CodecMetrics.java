@@ -0,0 +1,113 @@
+package org.lagrangecore.proto;
+
+import jdk.jfr.FlightRecorder;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ServiceLoader;
+
+/**
+ * Reports to the installed {@link ProtoMetrics}, and records serialize and deserialize calls as {@link CodecEvents}.
+ * The listener is a constant, and the events are created only while the flight recorder is running, so that without
+ * either every method here is compiled to next to nothing.
+ */
+final class CodecMetrics {
+    static final @Nullable ProtoMetrics LISTENER = load();
+
+    /**
+     * Whether the runtime has the flight recorder, which a custom runtime image may leave out.
+     */
+    private static final boolean JFR_AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    private CodecMetrics() {
+    }
+
+    private static @Nullable ProtoMetrics load() {
+        var className = System.getProperty("org.lagrangecore.proto.metrics");
+        if (className == null) {
+            return ServiceLoader.load(ProtoMetrics.class).findFirst().orElse(null);
+        }
+        try {
+            var clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+            return (ProtoMetrics) clazz.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Cannot install metrics listener " + className, e);
+        }
+    }
+
+    private static boolean recording() {
+        return JFR_AVAILABLE && FlightRecorder.isInitialized();
+    }
+
+    /**
+     * @return the event of a serialize call, begun, or {@code null} if it is not recorded
+     */
+    static @Nullable Object serializeEvent() {
+        return recording() ? CodecEvents.beginSerialize() : null;
+    }
+
+    /**
+     * @return the event of a deserialize call, begun, or {@code null} if it is not recorded
+     */
+    static @Nullable Object deserializeEvent() {
+        return recording() ? CodecEvents.beginDeserialize() : null;
+    }
+
+    /**
+     * @return the event of building a serializer or deserializer, begun, or {@code null} if it is not recorded
+     */
+    static @Nullable Object buildEvent() {
+        return recording() ? CodecEvents.beginBuild() : null;
+    }
+
+    /**
+     * Begin timing a call.
+     *
+     * @param event the event of the call
+     * @return the time to pass to {@link #encoded} or {@link #decoded}, or 0 if the call is not timed
+     */
+    static long start(@Nullable Object event) {
+        return LISTENER != null || event != null ? System.nanoTime() : 0;
+    }
+
+    static void encoded(Class<? extends ProtoMessage> clazz, int bytes, long start, @Nullable Object event) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        var listener = LISTENER;
+        if (listener != null) {
+            listener.encoded(clazz, bytes, nanos);
+        }
+        if (event != null) {
+            CodecEvents.commitCall(event, clazz, bytes, nanos);
+        }
+    }
+
+    static void decoded(Class<? extends ProtoMessage> clazz, int bytes, long start, @Nullable Object event) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        var listener = LISTENER;
+        if (listener != null) {
+            listener.decoded(clazz, bytes, nanos);
+        }
+        if (event != null) {
+            CodecEvents.commitCall(event, clazz, bytes, nanos);
+        }
+    }
+
+    static void unknownField(Class<? extends ProtoMessage> clazz) {
+        var listener = LISTENER;
+        if (listener != null) {
+            listener.unknownField(clazz);
+        }
+    }
+
+    static void defaultsFilled(Class<? extends ProtoMessage> clazz, int fields) {
+        var listener = LISTENER;
+        if (listener != null && fields != 0) {
+            listener.defaultsFilled(clazz, fields);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.lagrangecore.proto;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Holds one serializer or deserializer per message class, created on first use.
+ * <p>
+ * Values are attached to their class through a {@link ClassValue} rather than kept in a static map, so that the class
+ * loader of a message class can still be unloaded. Each class has an entry, cheap to create, which creates the value
+ * once under its own lock: threads asking for the same class at the same time wait for it instead of each building
+ * their own.
+ *
+ * @param <V> the type of the values
+ */
+final class CodecRegistry<V> {
+    private final ClassValue<Entry<V>> entries;
+
+    CodecRegistry(Function<Class<?>, V> factory) {
+        entries = new ClassValue<>() {
+            @Override
+            protected Entry<V> computeValue(Class<?> type) {
+                return new Entry<>(type, factory);
+            }
+        };
+    }
+
+    /**
+     * @return the value of the class, created if it does not exist
+     */
+    V get(Class<?> clazz) {
+        return entries.get(clazz).get();
+    }
+
+    /**
+     * Get the value of a class without creating it yet. Used for the serializers and deserializers of nested
+     * messages, which may contain the enclosing message, directly or not, and so cannot be created along with it.
+     *
+     * @return the entry of the class, creating the value on its first {@link Supplier#get()}
+     */
+    Supplier<V> entry(Class<?> clazz) {
+        return entries.get(clazz);
+    }
+
+    private static final class Entry<V> implements Supplier<V> {
+        private final Class<?> clazz;
+        private final Function<Class<?>, V> factory;
+        private volatile @Nullable V value;
+
+        Entry(Class<?> clazz, Function<Class<?>, V> factory) {
+            this.clazz = clazz;
+            this.factory = factory;
+        }
+
+        @Override
+        public V get() {
+            var value = this.value;
+            if (value == null) {
+                synchronized (this) {
+                    value = this.value;
+                    if (value == null) {
+                        value = factory.apply(clazz);
+                        this.value = value;
+                    }
+                }
+            }
+            return value;
+        }
+    }
+}
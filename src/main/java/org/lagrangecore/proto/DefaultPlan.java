@@ -0,0 +1,159 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.ByteString;
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.booleans.BooleanList;
+import it.unimi.dsi.fastutil.booleans.BooleanLists;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.doubles.DoubleLists;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.floats.FloatList;
+import it.unimi.dsi.fastutil.floats.FloatLists;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntLists;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongLists;
+import org.jetbrains.annotations.Nullable;
+import org.lagrangecore.proto.annotations.ProtoField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The default values of the fields of a message class, given to the fields absent from the data a message is
+ * deserialized from. Resolved once per class.
+ * <p>
+ * Only fields whose default is not {@code null} are in the plan: lists, and strings, byte arrays, lazy and nested
+ * messages that are not optional. A nested message whose class contains the class of the message in turn, directly or
+ * through other classes, is left {@code null}, since its default would hold a default of its own without end. A field
+ * is given its default only if it is {@code null}, so that values set by the constructor are kept. Fields are
+ * identified by their index in the list the plan is made from, which the decode loop marks in a bitmask as it reads
+ * them.
+ * <p>
+ * A shared plan gives every message the same values instead of new ones: immutable empty lists, and frozen empty
+ * nested messages, one per class.
+ */
+final class DefaultPlan {
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private final int[] indexes;
+    private final ProtoFieldAccessor[] accessors;
+    private final Supplier<?>[] values;
+
+    private DefaultPlan(int[] indexes, ProtoFieldAccessor[] accessors, Supplier<?>[] values) {
+        this.indexes = indexes;
+        this.accessors = accessors;
+        this.values = values;
+    }
+
+    /**
+     * @param fieldDescriptors the fields
+     * @param shared           whether to share the values between messages
+     * @return the plan
+     */
+    static DefaultPlan of(List<ProtoFieldDescriptor> fieldDescriptors, boolean shared) {
+        var indexes = new int[fieldDescriptors.size()];
+        var accessors = new ProtoFieldAccessor[fieldDescriptors.size()];
+        var values = new Supplier<?>[fieldDescriptors.size()];
+        int count = 0;
+        for (int i = 0; i < fieldDescriptors.size(); i++) {
+            var desc = fieldDescriptors.get(i);
+            var value = defaultValueOf(desc, shared);
+            if (value != null) {
+                indexes[count] = i;
+                accessors[count] = desc.accessor();
+                values[count++] = value;
+            }
+        }
+        return new DefaultPlan(
+                Arrays.copyOf(indexes, count),
+                Arrays.copyOf(accessors, count),
+                Arrays.copyOf(values, count));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static @Nullable Supplier<?> defaultValueOf(ProtoFieldDescriptor desc, boolean shared) {
+        var clazz = desc.declaredField().getType();
+        if (clazz == IntList.class) {
+            return shared ? () -> IntLists.EMPTY_LIST : IntArrayList::new;
+        } else if (clazz == LongList.class) {
+            return shared ? () -> LongLists.EMPTY_LIST : LongArrayList::new;
+        } else if (clazz == FloatList.class) {
+            return shared ? () -> FloatLists.EMPTY_LIST : FloatArrayList::new;
+        } else if (clazz == DoubleList.class) {
+            return shared ? () -> DoubleLists.EMPTY_LIST : DoubleArrayList::new;
+        } else if (clazz == BooleanList.class) {
+            return shared ? () -> BooleanLists.EMPTY_LIST : BooleanArrayList::new;
+        } else if (clazz == List.class) {
+            return shared ? List::of : ArrayList::new;
+        } else if (desc.isOptional() || clazz.isPrimitive()) {
+            return null;
+        } else if (clazz == String.class) {
+            return () -> "";
+        } else if (clazz == byte[].class) {
+            return () -> EMPTY_BYTES;
+        } else if (clazz == Lazy.class) {
+            var nested = ProtobufDeserializer.nested((Class<ProtoMessage>) desc.actualType());
+            // already cheap, and written back out as the empty bytes it wraps
+            return () -> Lazy.wrap(nested.get(), ByteString.EMPTY);
+        } else if (contains(clazz, desc.declaredField().getDeclaringClass(), new HashSet<>())) {
+            return null;
+        } else {
+            var nested = ProtobufDeserializer.nested((Class<ProtoMessage>) clazz);
+            return shared ? () -> nested.get().sharedEmptyMessage() : () -> nested.get().emptyMessage();
+        }
+    }
+
+    /**
+     * Whether a message class contains another one through its nested message fields, directly or through other
+     * classes.
+     *
+     * @param visited the classes already looked through
+     */
+    private static boolean contains(Class<?> clazz, Class<?> target, Set<Class<?>> visited) {
+        if (!visited.add(clazz)) {
+            return false;
+        }
+        for (var field : clazz.getDeclaredFields()) {
+            var type = field.getType();
+            if (!field.isAnnotationPresent(ProtoField.class) || !ProtoMessage.class.isAssignableFrom(type)) {
+                continue;
+            }
+            if (type == target || contains(type, target, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Give their default values to the fields in the plan that were not read and are {@code null}.
+     *
+     * @param message the message
+     * @param visited the fields that were read, bit {@code i} standing for the field at index {@code i}; fields past
+     *                the 64th are checked whether read or not
+     * @return the number of fields given their default value
+     */
+    int apply(ProtoMessage message, long visited) {
+        int filled = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            int index = indexes[i];
+            if (index < Long.SIZE && (visited & (1L << index)) != 0) {
+                continue;
+            }
+            var accessor = accessors[i];
+            if (accessor.get(message) == null) {
+                accessor.set(message, values[i].get());
+                filled++;
+            }
+        }
+        return filled;
+    }
+}
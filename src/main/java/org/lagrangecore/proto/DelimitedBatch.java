@@ -0,0 +1,18 @@
+package org.lagrangecore.proto;
+
+/**
+ * Messages serialized one after another, each preceded by its size as a varint, as
+ * {@link ProtobufSerializer#writeDelimitedTo(ProtoMessage, java.io.OutputStream)} writes them.
+ *
+ * @param bytes   the serialized messages
+ * @param offsets the index in {@code bytes} where each message starts, at its size, followed by the length of
+ *                {@code bytes}; message {@code i} spans from {@code offsets[i]} to {@code offsets[i + 1]}
+ */
+public record DelimitedBatch(byte[] bytes, int[] offsets) {
+    /**
+     * @return the number of messages
+     */
+    public int count() {
+        return offsets.length - 1;
+    }
+}
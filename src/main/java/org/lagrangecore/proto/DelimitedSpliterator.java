@@ -0,0 +1,144 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the length-delimited messages of a buffer, splitting them by index for parallel streams.
+ * <p>
+ * The buffer is scanned once up front for where each message starts, which reads only the sizes in front of them. A
+ * spliterator then decodes its range through one stream, opened when it starts decoding; it is no longer split once
+ * it has.
+ *
+ * @param <T> the type of the protobuf message
+ */
+final class DelimitedSpliterator<T extends ProtoMessage> implements Spliterator<T> {
+    private final ProtobufDeserializer<T> deserializer;
+    private final ByteBuffer data;
+
+    /**
+     * Where each message starts in {@link #data}, at its size, followed by the end of the last one.
+     */
+    private final int[] offsets;
+
+    private int index;
+    private final int end;
+    private @Nullable CodedInputStream in;
+
+    /**
+     * The bytes {@link #in} reads, which unknown fields are kept as views of.
+     */
+    private @Nullable ByteString source;
+
+    private DelimitedSpliterator(ProtobufDeserializer<T> deserializer, ByteBuffer data, int[] offsets,
+                                 int index, int end) {
+        this.deserializer = deserializer;
+        this.data = data;
+        this.offsets = offsets;
+        this.index = index;
+        this.end = end;
+    }
+
+    /**
+     * @param data the messages, from the position of the buffer to its limit
+     */
+    static <T extends ProtoMessage> DelimitedSpliterator<T> of(ProtobufDeserializer<T> deserializer, ByteBuffer data) {
+        var slice = data.slice();
+        var offsets = scan(slice);
+        return new DelimitedSpliterator<>(deserializer, slice, offsets, 0, offsets.length - 1);
+    }
+
+    /**
+     * Find where each message starts by reading the sizes in front of them.
+     *
+     * @return the offset of each message, followed by the offset after the last one
+     */
+    private static int[] scan(ByteBuffer data) {
+        var offsets = new int[16];
+        int count = 0;
+        try {
+            var in = CodedInputStream.newInstance(data.duplicate());
+            while (true) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = in.getTotalBytesRead();
+                if (in.isAtEnd()) {
+                    return Arrays.copyOf(offsets, count);
+                }
+                in.skipRawBytes(in.readRawVarint32());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (index >= end) {
+            return false;
+        }
+        action.accept(read());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        while (index < end) {
+            action.accept(read());
+        }
+    }
+
+    private T read() {
+        var in = this.in;
+        var source = this.source;
+        if (in == null || source == null) {
+            int from = offsets[index];
+            var range = data.slice(from, offsets[end] - from);
+            in = CodedInputStream.newInstance(range);
+            in.enableAliasing(true);
+            source = UnsafeByteOperations.unsafeWrap(range);
+            this.in = in;
+            this.source = source;
+        }
+        var event = CodecMetrics.deserializeEvent();
+        long start = CodecMetrics.start(event);
+        try {
+            var message = deserializer.readMessage(in, source);
+            CodecMetrics.decoded(message.getClass(), offsets[index + 1] - offsets[index], start, event);
+            index++;
+            return message;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public @Nullable Spliterator<T> trySplit() {
+        int mid = (index + end) >>> 1;
+        if (in != null || mid == index) {
+            return null;
+        }
+        var prefix = new DelimitedSpliterator<>(deserializer, data, offsets, index, mid);
+        index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
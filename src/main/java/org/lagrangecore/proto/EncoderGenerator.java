@@ -0,0 +1,619 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import it.unimi.dsi.fastutil.booleans.BooleanList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.floats.FloatList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.lang.invoke.ConstantBootstraps;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Generates a {@link ProtoEncoder} as a hidden class nested in the message class, with one unrolled
+ * {@code computeSize} and one unrolled {@code serialize} method that access the fields directly.
+ */
+final class EncoderGenerator implements Opcodes {
+    private static final String ENCODER_SUFFIX = "$$ProtoEncoder";
+
+    private static final String ENCODER = Type.getInternalName(ProtoEncoder.class);
+    private static final String SERIALIZER = Type.getInternalName(ProtobufSerializer.class);
+    private static final String MESSAGE = Type.getInternalName(ProtoMessage.class);
+    private static final String LAZY = Type.getInternalName(Lazy.class);
+    private static final String OUTPUT = Type.getInternalName(CodedOutputStream.class);
+    private static final String SIZES = Type.getInternalName(SizeStack.class);
+    private static final String LIST = Type.getInternalName(List.class);
+    private static final String ITERATOR = Type.getInternalName(Iterator.class);
+    private static final String SUPPLIER = Type.getInternalName(Supplier.class);
+
+    private static final String SERIALIZER_DESC = "L" + SERIALIZER + ";";
+    private static final String SIZE_OF_DESC = "(" + SERIALIZER_DESC + "L" + MESSAGE + ";L" + SIZES + ";)I";
+    private static final String WRITE_MESSAGE_DESC
+            = "(" + SERIALIZER_DESC + "L" + MESSAGE + ";L" + OUTPUT + ";L" + SIZES + ";)V";
+    private static final String SIZE_OF_LAZY_DESC = "(" + SERIALIZER_DESC + "L" + LAZY + ";L" + SIZES + ";)I";
+    private static final String WRITE_LAZY_DESC
+            = "(" + SERIALIZER_DESC + "L" + LAZY + ";L" + OUTPUT + ";L" + SIZES + ";)V";
+
+    private static final Handle CLASS_DATA_AT = new Handle(H_INVOKESTATIC,
+            Type.getInternalName(MethodHandles.class), "classDataAt",
+            MethodType.methodType(Object.class, MethodHandles.Lookup.class, String.class, Class.class, int.class)
+                    .toMethodDescriptorString(),
+            false);
+
+    /**
+     * Resolves a constant by calling a method handle, here {@link Supplier#get()} on the entry of a nested serializer:
+     * the serializer is looked up the first time the encoder needs it, then kept as a constant.
+     */
+    private static final Handle CONSTANT_INVOKE = new Handle(H_INVOKESTATIC,
+            Type.getInternalName(ConstantBootstraps.class), "invoke",
+            MethodType.methodType(Object.class, MethodHandles.Lookup.class, String.class, Class.class,
+                    MethodHandle.class, Object[].class).toMethodDescriptorString(),
+            false);
+    private static final Handle SUPPLIER_GET = new Handle(H_INVOKEINTERFACE,
+            SUPPLIER, "get", "()Ljava/lang/Object;", true);
+
+    private final List<ProtoFieldDescriptor> descriptors;
+    private final String messageName;
+    private final List<Supplier<? extends ProtobufSerializer<?>>> serializers = new ArrayList<>();
+    private int nextLocal;
+
+    private EncoderGenerator(Class<?> clazz, List<ProtoFieldDescriptor> descriptors) {
+        this.descriptors = descriptors;
+        this.messageName = Type.getInternalName(clazz);
+    }
+
+    /**
+     * Generate and define the encoder of the given class.
+     *
+     * @param clazz       the class of the protobuf message
+     * @param descriptors the descriptors of the fields to encode
+     * @param <T>         the type of the protobuf message
+     * @return the encoder
+     * @throws IllegalArgumentException if a field is not supported
+     * @throws IllegalAccessException   if the package of the class is not open to this library
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends ProtoMessage> ProtoEncoder<T> generate(Class<T> clazz, List<ProtoFieldDescriptor> descriptors)
+            throws ReflectiveOperationException {
+        var generator = new EncoderGenerator(clazz, descriptors);
+        var bytes = generator.generateClass();
+        var lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup())
+                .defineHiddenClassWithClassData(bytes, List.copyOf(generator.serializers), true,
+                        MethodHandles.Lookup.ClassOption.NESTMATE);
+        try {
+            return (ProtoEncoder<T>) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot instantiate encoder of " + clazz.getName(), e);
+        }
+    }
+
+    private byte[] generateClass() {
+        var writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+        writer.visit(V21, ACC_FINAL | ACC_SUPER, messageName + ENCODER_SUFFIX, null, ENCODER, null);
+
+        var init = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, ENCODER, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        for (var desc : descriptors) {
+            if (desc.fieldType() == WireFormat.FieldType.MESSAGE) {
+                // looked up on first use, since the nested class may contain this one
+                serializers.add(ProtobufSerializer.nested(messageClassOf(desc)));
+            }
+        }
+
+        var computeSize = writer.visitMethod(ACC_PROTECTED, "computeSize",
+                "(L" + MESSAGE + ";L" + SIZES + ";)I", null, null);
+        computeSize.visitCode();
+        generateComputeSize(computeSize);
+        computeSize.visitMaxs(0, 0);
+        computeSize.visitEnd();
+
+        var serialize = writer.visitMethod(ACC_PROTECTED, "serialize",
+                "(L" + MESSAGE + ";L" + OUTPUT + ";L" + SIZES + ";)V",
+                null, new String[]{Type.getInternalName(IOException.class)});
+        serialize.visitCode();
+        generateSerialize(serialize);
+        serialize.visitMaxs(0, 0);
+        serialize.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    // Locals of computeSize: 0 = this, 1 = erased message, 2 = sizes, 3 = message, 4 = size
+    private void generateComputeSize(MethodVisitor mv) {
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, messageName);
+        mv.visitVarInsn(ASTORE, 3);
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, 4);
+        nextLocal = 5;
+
+        int serializerIndex = 0;
+        for (var desc : descriptors) {
+            var type = desc.fieldType();
+            int tagSize = CodedOutputStream.computeTagSize(desc.fieldNumber());
+            var skip = new Label();
+
+            if (!desc.isRepeated()) {
+                if (isScalar(type)) {
+                    checkFieldType(desc, primitiveOf(type));
+                    int fixedSize = fixedSizeOf(type);
+                    if (fixedSize > 0) {
+                        mv.visitIincInsn(4, tagSize + fixedSize);
+                    } else {
+                        mv.visitVarInsn(ILOAD, 4);
+                        loadField(mv, 3, desc);
+                        computeSizeNoTag(mv, type);
+                        pushInt(mv, tagSize);
+                        mv.visitInsn(IADD);
+                        mv.visitInsn(IADD);
+                        mv.visitVarInsn(ISTORE, 4);
+                    }
+                    continue;
+                }
+
+                int value = nextLocal++;
+                loadField(mv, 3, desc);
+                mv.visitVarInsn(ASTORE, value);
+                skipIfAbsent(mv, type, value, skip);
+                mv.visitVarInsn(ILOAD, 4);
+                pushInt(mv, tagSize);
+                mv.visitInsn(IADD);
+                if (type == WireFormat.FieldType.MESSAGE) {
+                    messageSize(mv, serializerIndex++, value, desc.isLazy());
+                } else {
+                    mv.visitVarInsn(ALOAD, value);
+                    computeSizeNoTag(mv, type);
+                }
+                mv.visitInsn(IADD);
+                mv.visitVarInsn(ISTORE, 4);
+                mv.visitLabel(skip);
+                continue;
+            }
+
+            int list = nextLocal++;
+            loadField(mv, 3, desc);
+            mv.visitVarInsn(ASTORE, list);
+            skipIfEmpty(mv, list, skip);
+
+            if (!isScalar(type)) {
+                int serializer = type == WireFormat.FieldType.MESSAGE ? serializerIndex++ : -1;
+                int iterator = nextLocal++;
+                int value = nextLocal++;
+                var loop = new Label();
+                iterate(mv, list, iterator, value, elementClassOf(desc), loop, skip);
+                mv.visitVarInsn(ILOAD, 4);
+                pushInt(mv, tagSize);
+                mv.visitInsn(IADD);
+                if (serializer >= 0) {
+                    messageSize(mv, serializer, value, false);
+                } else {
+                    mv.visitVarInsn(ALOAD, value);
+                    computeSizeNoTag(mv, type);
+                }
+                mv.visitInsn(IADD);
+                mv.visitVarInsn(ISTORE, 4);
+                mv.visitJumpInsn(GOTO, loop);
+                mv.visitLabel(skip);
+                continue;
+            }
+
+            checkFieldType(desc, listClassOf(primitiveOf(type)));
+            int fixedSize = fixedSizeOf(type);
+            if (desc.isPacked()) {
+                int length = nextLocal++;
+                if (fixedSize > 0) {
+                    listSize(mv, list);
+                    pushInt(mv, fixedSize);
+                    mv.visitInsn(IMUL);
+                    mv.visitVarInsn(ISTORE, length);
+                } else {
+                    mv.visitInsn(ICONST_0);
+                    mv.visitVarInsn(ISTORE, length);
+                    forEachIndex(mv, desc, list, element -> {
+                        mv.visitVarInsn(ILOAD, length);
+                        element.run();
+                        computeSizeNoTag(mv, type);
+                        mv.visitInsn(IADD);
+                        mv.visitVarInsn(ISTORE, length);
+                    });
+                    mv.visitVarInsn(ALOAD, 2);
+                    mv.visitVarInsn(ILOAD, length);
+                    mv.visitMethodInsn(INVOKESTATIC, ENCODER, "pushLength", "(L" + SIZES + ";I)V", false);
+                }
+                mv.visitVarInsn(ILOAD, 4);
+                pushInt(mv, tagSize);
+                mv.visitInsn(IADD);
+                mv.visitVarInsn(ILOAD, length);
+                mv.visitInsn(DUP);
+                mv.visitMethodInsn(INVOKESTATIC, OUTPUT, "computeUInt32SizeNoTag", "(I)I", false);
+                mv.visitInsn(IADD);
+                mv.visitInsn(IADD);
+                mv.visitVarInsn(ISTORE, 4);
+            } else if (fixedSize > 0) {
+                mv.visitVarInsn(ILOAD, 4);
+                listSize(mv, list);
+                pushInt(mv, tagSize + fixedSize);
+                mv.visitInsn(IMUL);
+                mv.visitInsn(IADD);
+                mv.visitVarInsn(ISTORE, 4);
+            } else {
+                mv.visitVarInsn(ILOAD, 4);
+                listSize(mv, list);
+                pushInt(mv, tagSize);
+                mv.visitInsn(IMUL);
+                mv.visitInsn(IADD);
+                mv.visitVarInsn(ISTORE, 4);
+                forEachIndex(mv, desc, list, element -> {
+                    mv.visitVarInsn(ILOAD, 4);
+                    element.run();
+                    computeSizeNoTag(mv, type);
+                    mv.visitInsn(IADD);
+                    mv.visitVarInsn(ISTORE, 4);
+                });
+            }
+            mv.visitLabel(skip);
+        }
+
+        mv.visitVarInsn(ILOAD, 4);
+        mv.visitInsn(IRETURN);
+    }
+
+    // Locals of serialize: 0 = this, 1 = erased message, 2 = output stream, 3 = sizes, 4 = message
+    private void generateSerialize(MethodVisitor mv) {
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, messageName);
+        mv.visitVarInsn(ASTORE, 4);
+        nextLocal = 5;
+
+        int serializerIndex = 0;
+        for (var desc : descriptors) {
+            var type = desc.fieldType();
+            int tag = makeTag(desc.fieldNumber(), type.getWireType());
+            var skip = new Label();
+
+            if (!desc.isRepeated()) {
+                if (isScalar(type)) {
+                    writeTag(mv, tag);
+                    mv.visitVarInsn(ALOAD, 2);
+                    loadField(mv, 4, desc);
+                    writeNoTag(mv, type);
+                    continue;
+                }
+
+                int value = nextLocal++;
+                loadField(mv, 4, desc);
+                mv.visitVarInsn(ASTORE, value);
+                skipIfAbsent(mv, type, value, skip);
+                writeTag(mv, tag);
+                if (type == WireFormat.FieldType.MESSAGE) {
+                    writeMessage(mv, serializerIndex++, value, desc.isLazy());
+                } else {
+                    mv.visitVarInsn(ALOAD, 2);
+                    mv.visitVarInsn(ALOAD, value);
+                    writeNoTag(mv, type);
+                }
+                mv.visitLabel(skip);
+                continue;
+            }
+
+            int list = nextLocal++;
+            loadField(mv, 4, desc);
+            mv.visitVarInsn(ASTORE, list);
+            skipIfEmpty(mv, list, skip);
+
+            if (!isScalar(type)) {
+                int serializer = type == WireFormat.FieldType.MESSAGE ? serializerIndex++ : -1;
+                int iterator = nextLocal++;
+                int value = nextLocal++;
+                var loop = new Label();
+                iterate(mv, list, iterator, value, elementClassOf(desc), loop, skip);
+                writeTag(mv, tag);
+                if (serializer >= 0) {
+                    writeMessage(mv, serializer, value, false);
+                } else {
+                    mv.visitVarInsn(ALOAD, 2);
+                    mv.visitVarInsn(ALOAD, value);
+                    writeNoTag(mv, type);
+                }
+                mv.visitJumpInsn(GOTO, loop);
+                mv.visitLabel(skip);
+                continue;
+            }
+
+            if (desc.isPacked()) {
+                writeTag(mv, makeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED));
+                mv.visitVarInsn(ALOAD, 2);
+                int fixedSize = fixedSizeOf(type);
+                if (fixedSize > 0) {
+                    listSize(mv, list);
+                    pushInt(mv, fixedSize);
+                    mv.visitInsn(IMUL);
+                } else {
+                    mv.visitVarInsn(ALOAD, 3);
+                    mv.visitMethodInsn(INVOKESTATIC, ENCODER, "nextLength", "(L" + SIZES + ";)I", false);
+                }
+                mv.visitMethodInsn(INVOKEVIRTUAL, OUTPUT, "writeUInt32NoTag", "(I)V", false);
+                forEachIndex(mv, desc, list, element -> {
+                    mv.visitVarInsn(ALOAD, 2);
+                    element.run();
+                    writeNoTag(mv, type);
+                });
+            } else {
+                forEachIndex(mv, desc, list, element -> {
+                    writeTag(mv, tag);
+                    mv.visitVarInsn(ALOAD, 2);
+                    element.run();
+                    writeNoTag(mv, type);
+                });
+            }
+            mv.visitLabel(skip);
+        }
+
+        mv.visitInsn(RETURN);
+    }
+
+    private void loadField(MethodVisitor mv, int message, ProtoFieldDescriptor desc) {
+        var field = desc.declaredField();
+        mv.visitVarInsn(ALOAD, message);
+        mv.visitFieldInsn(GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(),
+                Type.getDescriptor(field.getType()));
+    }
+
+    private static void skipIfAbsent(MethodVisitor mv, WireFormat.FieldType type, int value, Label skip) {
+        mv.visitVarInsn(ALOAD, value);
+        mv.visitJumpInsn(IFNULL, skip);
+        if (type == WireFormat.FieldType.STRING) {
+            mv.visitVarInsn(ALOAD, value);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "isEmpty", "()Z", false);
+            mv.visitJumpInsn(IFNE, skip);
+        } else if (type == WireFormat.FieldType.BYTES) {
+            mv.visitVarInsn(ALOAD, value);
+            mv.visitInsn(ARRAYLENGTH);
+            mv.visitJumpInsn(IFEQ, skip);
+        }
+    }
+
+    private static void skipIfEmpty(MethodVisitor mv, int list, Label skip) {
+        mv.visitVarInsn(ALOAD, list);
+        mv.visitJumpInsn(IFNULL, skip);
+        mv.visitVarInsn(ALOAD, list);
+        mv.visitMethodInsn(INVOKEINTERFACE, LIST, "isEmpty", "()Z", true);
+        mv.visitJumpInsn(IFNE, skip);
+    }
+
+    private static void listSize(MethodVisitor mv, int list) {
+        mv.visitVarInsn(ALOAD, list);
+        mv.visitMethodInsn(INVOKEINTERFACE, LIST, "size", "()I", true);
+    }
+
+    /**
+     * Emit the head of a loop over a list of objects. The body is expected to jump back to {@code loop}.
+     */
+    private static void iterate(MethodVisitor mv, int list, int iterator, int value, Class<?> elementClass,
+                                Label loop, Label end) {
+        mv.visitVarInsn(ALOAD, list);
+        mv.visitMethodInsn(INVOKEINTERFACE, LIST, "iterator", "()L" + ITERATOR + ";", true);
+        mv.visitVarInsn(ASTORE, iterator);
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ALOAD, iterator);
+        mv.visitMethodInsn(INVOKEINTERFACE, ITERATOR, "hasNext", "()Z", true);
+        mv.visitJumpInsn(IFEQ, end);
+        mv.visitVarInsn(ALOAD, iterator);
+        mv.visitMethodInsn(INVOKEINTERFACE, ITERATOR, "next", "()Ljava/lang/Object;", true);
+        mv.visitTypeInsn(CHECKCAST, Type.getInternalName(elementClass));
+        mv.visitVarInsn(ASTORE, value);
+    }
+
+    /**
+     * Emit an indexed loop over a fastutil list; {@code body} receives a runnable that pushes the current element.
+     */
+    private void forEachIndex(MethodVisitor mv, ProtoFieldDescriptor desc, int list,
+                              Consumer<Runnable> body) {
+        var elementClass = (Class<?>) desc.actualType();
+        var listClass = listClassOf(elementClass);
+        var getter = "get" + Character.toUpperCase(elementClass.getName().charAt(0))
+                + elementClass.getName().substring(1);
+        int index = nextLocal++;
+        int size = nextLocal++;
+        var loop = new Label();
+        var end = new Label();
+
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, index);
+        listSize(mv, list);
+        mv.visitVarInsn(ISTORE, size);
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ILOAD, index);
+        mv.visitVarInsn(ILOAD, size);
+        mv.visitJumpInsn(IF_ICMPGE, end);
+        body.accept(() -> {
+            mv.visitVarInsn(ALOAD, list);
+            mv.visitVarInsn(ILOAD, index);
+            mv.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(listClass), getter,
+                    "(I)" + Type.getDescriptor(elementClass), true);
+        });
+        mv.visitIincInsn(index, 1);
+        mv.visitJumpInsn(GOTO, loop);
+        mv.visitLabel(end);
+    }
+
+    private static void messageSize(MethodVisitor mv, int serializer, int value, boolean lazy) {
+        loadSerializer(mv, serializer);
+        mv.visitVarInsn(ALOAD, value);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKESTATIC, ENCODER, "sizeOf", lazy ? SIZE_OF_LAZY_DESC : SIZE_OF_DESC, false);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESTATIC, OUTPUT, "computeUInt32SizeNoTag", "(I)I", false);
+        mv.visitInsn(IADD);
+    }
+
+    private static void writeMessage(MethodVisitor mv, int serializer, int value, boolean lazy) {
+        loadSerializer(mv, serializer);
+        mv.visitVarInsn(ALOAD, value);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitMethodInsn(INVOKESTATIC, ENCODER, "writeMessageNoTag",
+                lazy ? WRITE_LAZY_DESC : WRITE_MESSAGE_DESC, false);
+    }
+
+    private static void loadSerializer(MethodVisitor mv, int index) {
+        var entry = new ConstantDynamic("_", "L" + SUPPLIER + ";", CLASS_DATA_AT, index);
+        mv.visitLdcInsn(new ConstantDynamic("_", SERIALIZER_DESC, CONSTANT_INVOKE, SUPPLIER_GET, entry));
+    }
+
+    private static void writeTag(MethodVisitor mv, int tag) {
+        mv.visitVarInsn(ALOAD, 2);
+        pushInt(mv, tag);
+        mv.visitMethodInsn(INVOKEVIRTUAL, OUTPUT, "writeUInt32NoTag", "(I)V", false);
+    }
+
+    private static int makeTag(int fieldNumber, int wireType) {
+        return (fieldNumber << 3) | wireType;
+    }
+
+    private static void computeSizeNoTag(MethodVisitor mv, WireFormat.FieldType type) {
+        mv.visitMethodInsn(INVOKESTATIC, OUTPUT, "compute" + codedNameOf(type) + "SizeNoTag",
+                "(" + valueDescriptorOf(type) + ")I", false);
+    }
+
+    private static void writeNoTag(MethodVisitor mv, WireFormat.FieldType type) {
+        mv.visitMethodInsn(INVOKEVIRTUAL, OUTPUT, "write" + codedNameOf(type) + "NoTag",
+                "(" + valueDescriptorOf(type) + ")V", false);
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private static void checkFieldType(ProtoFieldDescriptor desc, Class<?> expected) {
+        if (desc.declaredField().getType() != expected) {
+            throw new IllegalArgumentException("Field " + desc.declaredField().getName()
+                    + " cannot be encoded as " + desc.fieldType());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<ProtoMessage> messageClassOf(ProtoFieldDescriptor desc) {
+        return (Class<ProtoMessage>) elementClassOf(desc);
+    }
+
+    private static Class<?> elementClassOf(ProtoFieldDescriptor desc) {
+        if (desc.actualType() instanceof Class<?> elementClass) {
+            return elementClass;
+        }
+        throw new IllegalArgumentException("Unsupported element type: " + desc.actualType().getTypeName());
+    }
+
+    private static Class<?> listClassOf(Class<?> elementClass) {
+        if (elementClass == int.class) {
+            return IntList.class;
+        } else if (elementClass == long.class) {
+            return LongList.class;
+        } else if (elementClass == float.class) {
+            return FloatList.class;
+        } else if (elementClass == double.class) {
+            return DoubleList.class;
+        } else if (elementClass == boolean.class) {
+            return BooleanList.class;
+        }
+        throw new IllegalArgumentException("Unsupported element type: " + elementClass.getName());
+    }
+
+    private static Class<?> primitiveOf(WireFormat.FieldType type) {
+        return switch (type) {
+            case INT32, UINT32, SINT32, FIXED32, SFIXED32 -> int.class;
+            case INT64, UINT64, SINT64, FIXED64, SFIXED64 -> long.class;
+            case FLOAT -> float.class;
+            case DOUBLE -> double.class;
+            case BOOL -> boolean.class;
+            default -> throw new IllegalArgumentException("Unsupported field type: " + type);
+        };
+    }
+
+    private static boolean isScalar(WireFormat.FieldType type) {
+        return type != WireFormat.FieldType.STRING
+                && type != WireFormat.FieldType.BYTES
+                && type != WireFormat.FieldType.MESSAGE;
+    }
+
+    private static int fixedSizeOf(WireFormat.FieldType type) {
+        return switch (type) {
+            case FIXED32, SFIXED32, FLOAT -> 4;
+            case FIXED64, SFIXED64, DOUBLE -> 8;
+            case BOOL -> 1;
+            default -> 0;
+        };
+    }
+
+    private static String codedNameOf(WireFormat.FieldType type) {
+        return switch (type) {
+            case INT32 -> "Int32";
+            case INT64 -> "Int64";
+            case UINT32 -> "UInt32";
+            case UINT64 -> "UInt64";
+            case SINT32 -> "SInt32";
+            case SINT64 -> "SInt64";
+            case FIXED32 -> "Fixed32";
+            case FIXED64 -> "Fixed64";
+            case SFIXED32 -> "SFixed32";
+            case SFIXED64 -> "SFixed64";
+            case FLOAT -> "Float";
+            case DOUBLE -> "Double";
+            case BOOL -> "Bool";
+            case STRING -> "String";
+            case BYTES -> "ByteArray";
+            default -> throw new IllegalArgumentException("Unsupported field type: " + type);
+        };
+    }
+
+    private static String valueDescriptorOf(WireFormat.FieldType type) {
+        return switch (type) {
+            case INT32, UINT32, SINT32, FIXED32, SFIXED32 -> "I";
+            case INT64, UINT64, SINT64, FIXED64, SFIXED64 -> "J";
+            case FLOAT -> "F";
+            case DOUBLE -> "D";
+            case BOOL -> "Z";
+            case STRING -> "Ljava/lang/String;";
+            case BYTES -> "[B";
+            default -> throw new IllegalArgumentException("Unsupported field type: " + type);
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package org.lagrangecore.proto;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds a field from its number while decoding, along with its deserializer if the message has no codec.
+ * <p>
+ * Fields are kept in the order of their numbers, which is the order they are usually encoded in, so the field after
+ * the last one read is tried first. Otherwise, the field is looked up in an array indexed by field number if the
+ * numbers are small or dense enough, and in a hash map if not.
+ */
+final class FieldDispatch {
+    /**
+     * Field numbers up to this one are always looked up in an array.
+     */
+    private static final int DENSE_LIMIT = 64;
+
+    private final int[] numbers;
+    private final ProtoFieldDeserializer[] deserializers;
+
+    /**
+     * The index of each field by field number, {@code -1} where there is none; {@code null} if the numbers are sparse.
+     */
+    private final int @Nullable [] denseIndices;
+    private final Int2IntOpenHashMap sparseIndices;
+
+    private FieldDispatch(int[] numbers, ProtoFieldDeserializer[] deserializers) {
+        this.numbers = numbers;
+        this.deserializers = deserializers;
+        int max = numbers.length == 0 ? 0 : numbers[numbers.length - 1];
+        if (max <= Math.max(DENSE_LIMIT, numbers.length * 4)) {
+            denseIndices = new int[max + 1];
+            Arrays.fill(denseIndices, -1);
+            for (int i = 0; i < numbers.length; i++) {
+                denseIndices[numbers[i]] = i;
+            }
+            sparseIndices = new Int2IntOpenHashMap(0);
+        } else {
+            denseIndices = null;
+            sparseIndices = new Int2IntOpenHashMap(numbers.length);
+            sparseIndices.defaultReturnValue(-1);
+            for (int i = 0; i < numbers.length; i++) {
+                sparseIndices.put(numbers[i], i);
+            }
+        }
+    }
+
+    /**
+     * @param fieldDescriptors    the fields, in the order of their numbers
+     * @param createDeserializers whether to create a deserializer for each field, or only to find fields
+     * @return the dispatch of the fields
+     */
+    static FieldDispatch of(List<ProtoFieldDescriptor> fieldDescriptors, boolean createDeserializers) {
+        var numbers = new int[fieldDescriptors.size()];
+        var deserializers = new ProtoFieldDeserializer[fieldDescriptors.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = fieldDescriptors.get(i).fieldNumber();
+            if (createDeserializers) {
+                deserializers[i] = ProtoFieldDeserializer.create(fieldDescriptors.get(i));
+            }
+        }
+        return new FieldDispatch(numbers, deserializers);
+    }
+
+    /**
+     * @return the dispatch of the fields whose numbers are in the mask, sharing their deserializers
+     */
+    FieldDispatch filter(IntSet fieldMask) {
+        int count = 0;
+        var numbers = new int[this.numbers.length];
+        var deserializers = new ProtoFieldDeserializer[this.numbers.length];
+        for (int i = 0; i < this.numbers.length; i++) {
+            if (fieldMask.contains(this.numbers[i])) {
+                numbers[count] = this.numbers[i];
+                deserializers[count++] = this.deserializers[i];
+            }
+        }
+        return new FieldDispatch(Arrays.copyOf(numbers, count), Arrays.copyOf(deserializers, count));
+    }
+
+    /**
+     * Find a field.
+     *
+     * @param fieldNumber the number of the field
+     * @param last        the index of the field read last, or {@code -1} at the start of the message
+     * @return the index of the field, or {@code -1} if there is none with that number
+     */
+    int indexOf(int fieldNumber, int last) {
+        int next = last + 1;
+        if (next < numbers.length && numbers[next] == fieldNumber) {
+            return next;
+        }
+        // a repeated field that is not packed
+        if (last >= 0 && numbers[last] == fieldNumber) {
+            return last;
+        }
+        var denseIndices = this.denseIndices;
+        if (denseIndices != null) {
+            return fieldNumber < denseIndices.length ? denseIndices[fieldNumber] : -1;
+        }
+        return sparseIndices.get(fieldNumber);
+    }
+
+    /**
+     * @return the deserializer of the field at the index, {@code null} if none was created
+     */
+    ProtoFieldDeserializer deserializerAt(int index) {
+        return deserializers[index];
+    }
+}
@@ -0,0 +1,103 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.ByteString;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A nested message that is decoded on first access.
+ * <p>
+ * A field declared as {@code Lazy<T>} keeps the encoded bytes of the nested message when its parent is deserialized,
+ * and decodes them the first time {@link #get()} is called. Until then, serializing the parent writes the bytes back
+ * out as they were read. Once decoded, the message is serialized from its fields, so changes made to it are kept.
+ * <p>
+ * The bytes are a view of the array the parent was deserialized from, which must not be modified while the field is
+ * undecoded. Decoding counts as a modification of the parent: call {@link ProtoMessage#invalidateSize()} on frozen
+ * messages containing it, and do not decode it while another thread serializes the parent.
+ *
+ * @param <T> the type of the nested message
+ */
+public final class Lazy<T extends ProtoMessage> {
+    private final @Nullable ProtobufDeserializer<T> deserializer;
+
+    /**
+     * Either the undecoded bytes or the decoded message.
+     */
+    private volatile Object state;
+
+    private Lazy(@Nullable ProtobufDeserializer<T> deserializer, Object state) {
+        this.deserializer = deserializer;
+        this.state = state;
+    }
+
+    /**
+     * Wrap a message that is already decoded, to be assigned to a lazy field.
+     *
+     * @param message the message
+     * @param <T>     the type of the message
+     * @return the lazy field value
+     */
+    public static <T extends ProtoMessage> Lazy<T> of(T message) {
+        return new Lazy<>(null, Objects.requireNonNull(message));
+    }
+
+    static <T extends ProtoMessage> Lazy<T> wrap(ProtobufDeserializer<T> deserializer, ByteString bytes) {
+        return new Lazy<>(deserializer, bytes);
+    }
+
+    /**
+     * Get the message, decoding it if it has not been yet.
+     *
+     * @return the message
+     */
+    @SuppressWarnings("unchecked")
+    public T get() {
+        var current = state;
+        if (current instanceof ByteString) {
+            synchronized (this) {
+                current = state;
+                if (current instanceof ByteString bytes) {
+                    current = decode(bytes);
+                    state = current;
+                }
+            }
+        }
+        return (T) current;
+    }
+
+    private T decode(ByteString bytes) {
+        var event = CodecMetrics.deserializeEvent();
+        long start = CodecMetrics.start(event);
+        var stream = bytes.newCodedInput();
+        stream.enableAliasing(true);
+        try {
+            var message = Objects.requireNonNull(deserializer).deserialize(stream, bytes);
+            CodecMetrics.decoded(message.getClass(), bytes.size(), start, event);
+            return message;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return whether the message has been decoded, or was never encoded
+     */
+    public boolean isDecoded() {
+        return !(state instanceof ByteString);
+    }
+
+    /**
+     * @return the bytes to write back out, or {@code null} if the message has to be serialized from its fields
+     */
+    @Nullable ByteString undecodedBytes() {
+        return state instanceof ByteString bytes ? bytes : null;
+    }
+
+    @Override
+    public String toString() {
+        var current = state;
+        return current instanceof ByteString bytes ? "Lazy(" + bytes.size() + " bytes)" : "Lazy(" + current + ")";
+    }
+}
@@ -0,0 +1,217 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.booleans.BooleanList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.floats.FloatList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes packed repeated fields.
+ * <p>
+ * The run is taken from the parent stream with {@link CodedInputStream#readByteBuffer()}, which does not copy when
+ * aliasing is enabled on an array-backed stream. Varints are counted before decoding so that the list grows at most
+ * once, and fixed-width runs are copied into the backing array of the list in a single bulk operation.
+ * <p>
+ * Each method appends to the given list, or to a new list of the exact size if it is {@code null}, and returns the
+ * list it appended to.
+ */
+final class PackedFields {
+    private PackedFields() {
+    }
+
+    static IntList readInt32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        var run = in.readByteBuffer();
+        var result = prepare(list, countVarints(run));
+        while (run.hasRemaining()) {
+            result.add((int) readVarint(run));
+        }
+        return result;
+    }
+
+    static IntList readUInt32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        return readInt32(in, list);
+    }
+
+    static IntList readSInt32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        var run = in.readByteBuffer();
+        var result = prepare(list, countVarints(run));
+        while (run.hasRemaining()) {
+            result.add(CodedInputStream.decodeZigZag32((int) readVarint(run)));
+        }
+        return result;
+    }
+
+    static LongList readInt64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        var run = in.readByteBuffer();
+        var result = prepare(list, countVarints(run));
+        while (run.hasRemaining()) {
+            result.add(readVarint(run));
+        }
+        return result;
+    }
+
+    static LongList readUInt64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        return readInt64(in, list);
+    }
+
+    static LongList readSInt64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        var run = in.readByteBuffer();
+        var result = prepare(list, countVarints(run));
+        while (run.hasRemaining()) {
+            result.add(CodedInputStream.decodeZigZag64(readVarint(run)));
+        }
+        return result;
+    }
+
+    static BooleanList readBool(CodedInputStream in, @Nullable BooleanList list) throws IOException {
+        var run = in.readByteBuffer();
+        int count = countVarints(run);
+        var result = list == null ? new BooleanArrayList(count) : list;
+        if (result instanceof BooleanArrayList arrayList) {
+            arrayList.ensureCapacity(arrayList.size() + count);
+        }
+        while (run.hasRemaining()) {
+            result.add(readVarint(run) != 0);
+        }
+        return result;
+    }
+
+    static IntList readFixed32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        var run = fixedRun(in, Integer.BYTES);
+        int count = run.remaining() / Integer.BYTES;
+        var result = prepare(list, count);
+        if (result instanceof IntArrayList arrayList) {
+            int size = arrayList.size();
+            arrayList.size(size + count);
+            run.asIntBuffer().get(arrayList.elements(), size, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                result.add(run.getInt());
+            }
+        }
+        return result;
+    }
+
+    static IntList readSFixed32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        return readFixed32(in, list);
+    }
+
+    static LongList readFixed64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        var run = fixedRun(in, Long.BYTES);
+        int count = run.remaining() / Long.BYTES;
+        var result = prepare(list, count);
+        if (result instanceof LongArrayList arrayList) {
+            int size = arrayList.size();
+            arrayList.size(size + count);
+            run.asLongBuffer().get(arrayList.elements(), size, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                result.add(run.getLong());
+            }
+        }
+        return result;
+    }
+
+    static LongList readSFixed64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        return readFixed64(in, list);
+    }
+
+    static FloatList readFloat(CodedInputStream in, @Nullable FloatList list) throws IOException {
+        var run = fixedRun(in, Float.BYTES);
+        int count = run.remaining() / Float.BYTES;
+        var result = list == null ? new FloatArrayList(count) : list;
+        if (result instanceof FloatArrayList arrayList) {
+            int size = arrayList.size();
+            arrayList.size(size + count);
+            run.asFloatBuffer().get(arrayList.elements(), size, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                result.add(run.getFloat());
+            }
+        }
+        return result;
+    }
+
+    static DoubleList readDouble(CodedInputStream in, @Nullable DoubleList list) throws IOException {
+        var run = fixedRun(in, Double.BYTES);
+        int count = run.remaining() / Double.BYTES;
+        var result = list == null ? new DoubleArrayList(count) : list;
+        if (result instanceof DoubleArrayList arrayList) {
+            int size = arrayList.size();
+            arrayList.size(size + count);
+            run.asDoubleBuffer().get(arrayList.elements(), size, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                result.add(run.getDouble());
+            }
+        }
+        return result;
+    }
+
+    private static IntList prepare(@Nullable IntList list, int count) {
+        if (list == null) {
+            return new IntArrayList(count);
+        }
+        if (list instanceof IntArrayList arrayList) {
+            arrayList.ensureCapacity(arrayList.size() + count);
+        }
+        return list;
+    }
+
+    private static LongList prepare(@Nullable LongList list, int count) {
+        if (list == null) {
+            return new LongArrayList(count);
+        }
+        if (list instanceof LongArrayList arrayList) {
+            arrayList.ensureCapacity(arrayList.size() + count);
+        }
+        return list;
+    }
+
+    private static ByteBuffer fixedRun(CodedInputStream in, int width) throws IOException {
+        var run = in.readByteBuffer();
+        if (run.remaining() % width != 0) {
+            throw new InvalidProtocolBufferException("Packed fixed-width field has a length of "
+                    + run.remaining() + ", which is not a multiple of " + width);
+        }
+        return run.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int countVarints(ByteBuffer run) {
+        int count = 0;
+        for (int i = run.position(), limit = run.limit(); i < limit; i++) {
+            if (run.get(i) >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long readVarint(ByteBuffer run) throws InvalidProtocolBufferException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!run.hasRemaining()) {
+                throw new InvalidProtocolBufferException("Packed field ends in the middle of a varint");
+            }
+            byte b = run.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new InvalidProtocolBufferException("Packed field contains a malformed varint");
+    }
+}
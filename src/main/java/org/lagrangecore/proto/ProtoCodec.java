@@ -0,0 +1,247 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import it.unimi.dsi.fastutil.booleans.BooleanList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.floats.FloatList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Base class of the codecs generated by {@code proto-anno-processor}.
+ * <p>
+ * A generated codec is named after the message class it handles, e.g. {@code com.example.PersonCodec} for
+ * {@code com.example.Person} and {@code com.example.Outer_InnerCodec} for {@code com.example.Outer.Inner}.
+ * {@link ProtobufSerializer} and {@link ProtobufDeserializer} pick it up automatically when it is on the classpath,
+ * and fall back to reflection otherwise. This class is not meant to be extended by hand.
+ *
+ * @param <T> the type of the protobuf message
+ */
+public abstract class ProtoCodec<T extends ProtoMessage> extends ProtoEncoder<T> {
+    private static final String CODEC_SUFFIX = "Codec";
+
+    /**
+     * Read the value of one field into the message.
+     *
+     * @param message the message being deserialized
+     * @param in      the input stream, positioned right after the tag
+     * @param source  the bytes the input stream reads, to be passed on to
+     *                {@link #readMessage(ProtobufDeserializer, CodedInputStream, ByteString)}
+     * @param tag     the tag that was just read
+     * @return {@code true} if the field was consumed, {@code false} if the tag is unknown to this codec
+     */
+    protected abstract boolean readField(T message, CodedInputStream in, ByteString source, int tag)
+            throws IOException;
+
+    /**
+     * Create a message with the no-argument constructor, leaving its fields as it does.
+     *
+     * @return the new message
+     */
+    protected abstract T newMessage();
+
+    /**
+     * Get the no-argument constructor of a message class that the codec cannot call directly, e.g. a private one,
+     * to be invoked through {@link #construct(MethodHandle)}.
+     *
+     * @param lookup the lookup of the codec class
+     * @param clazz  the message class
+     * @return the constructor, or {@code null} if there is none, in which case the class cannot be deserialized
+     */
+    protected static @Nullable MethodHandle constructorHandle(
+            MethodHandles.Lookup lookup, Class<? extends ProtoMessage> clazz) {
+        try {
+            return ProtobufDeserializer.constructorOf(lookup, clazz);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access the constructor of " + clazz.getName(), e);
+        }
+    }
+
+    protected static ProtoMessage construct(MethodHandle constructor) {
+        return ProtobufDeserializer.construct(constructor);
+    }
+
+    /**
+     * Read a length-delimited nested message in place, without copying it out of the input stream.
+     *
+     * @param deserializer the deserializer of the nested message
+     * @param in           the input stream, positioned at the length of the nested message
+     * @param source       the bytes the input stream reads
+     * @param <M>          the type of the nested message
+     * @return the nested message
+     */
+    protected static <M extends ProtoMessage> M readMessage(
+            ProtobufDeserializer<M> deserializer, CodedInputStream in, ByteString source) throws IOException {
+        return deserializer.readMessage(in, source);
+    }
+
+    /**
+     * Read a length-delimited nested message in place, into the current value of the field if it is kept to be
+     * reused, see {@link ProtobufDeserializer#clear(ProtoMessage)}.
+     *
+     * @param deserializer the deserializer of the nested message
+     * @param in           the input stream, positioned at the length of the nested message
+     * @param source       the bytes the input stream reads
+     * @param current      the current value of the field
+     * @param <M>          the type of the nested message
+     * @return the nested message
+     */
+    protected static <M extends ProtoMessage> M readMessage(ProtobufDeserializer<M> deserializer, CodedInputStream in,
+                                                            ByteString source, @Nullable M current)
+            throws IOException {
+        return deserializer.readMessage(in, source, current);
+    }
+
+    /**
+     * Read a length-delimited nested message as a {@link Lazy}, leaving it undecoded.
+     *
+     * @param deserializer the deserializer of the nested message
+     * @param in           the input stream, positioned at the length of the nested message
+     * @param <M>          the type of the nested message
+     * @return the undecoded nested message
+     */
+    protected static <M extends ProtoMessage> Lazy<M> readLazy(
+            ProtobufDeserializer<M> deserializer, CodedInputStream in) throws IOException {
+        return deserializer.readLazy(in);
+    }
+
+    // Packed repeated fields, see PackedFields. Each returns the list it appended to, which is a new one if the
+    // given list is null.
+
+    protected static IntList readPackedInt32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        return PackedFields.readInt32(in, list);
+    }
+
+    protected static IntList readPackedUInt32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        return PackedFields.readUInt32(in, list);
+    }
+
+    protected static IntList readPackedSInt32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        return PackedFields.readSInt32(in, list);
+    }
+
+    protected static IntList readPackedFixed32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        return PackedFields.readFixed32(in, list);
+    }
+
+    protected static IntList readPackedSFixed32(CodedInputStream in, @Nullable IntList list) throws IOException {
+        return PackedFields.readSFixed32(in, list);
+    }
+
+    protected static LongList readPackedInt64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        return PackedFields.readInt64(in, list);
+    }
+
+    protected static LongList readPackedUInt64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        return PackedFields.readUInt64(in, list);
+    }
+
+    protected static LongList readPackedSInt64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        return PackedFields.readSInt64(in, list);
+    }
+
+    protected static LongList readPackedFixed64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        return PackedFields.readFixed64(in, list);
+    }
+
+    protected static LongList readPackedSFixed64(CodedInputStream in, @Nullable LongList list) throws IOException {
+        return PackedFields.readSFixed64(in, list);
+    }
+
+    protected static FloatList readPackedFloat(CodedInputStream in, @Nullable FloatList list) throws IOException {
+        return PackedFields.readFloat(in, list);
+    }
+
+    protected static DoubleList readPackedDouble(CodedInputStream in, @Nullable DoubleList list) throws IOException {
+        return PackedFields.readDouble(in, list);
+    }
+
+    protected static BooleanList readPackedBool(CodedInputStream in, @Nullable BooleanList list) throws IOException {
+        return PackedFields.readBool(in, list);
+    }
+
+    /**
+     * Get the handle of a field that the codec cannot access directly, e.g. a private one.
+     *
+     * @param lookup the lookup of the codec class
+     * @param clazz  the class declaring the field
+     * @param name   the name of the field
+     * @return the handle of the field, read-only if the field is final
+     */
+    protected static VarHandle fieldHandle(MethodHandles.Lookup lookup, Class<?> clazz, String name) {
+        return accessorOf(lookup, clazz, name).handle();
+    }
+
+    /**
+     * Get the setter of a final field, to be invoked through {@link #setFinal(MethodHandle, ProtoMessage, Object)}.
+     *
+     * @param lookup the lookup of the codec class
+     * @param clazz  the class declaring the field
+     * @param name   the name of the field
+     * @return the setter of the field
+     */
+    protected static MethodHandle finalFieldSetter(MethodHandles.Lookup lookup, Class<?> clazz, String name) {
+        var setter = accessorOf(lookup, clazz, name).finalSetter();
+        if (setter == null) {
+            throw new IllegalArgumentException("Field " + name + " of " + clazz.getName() + " is not final");
+        }
+        return setter;
+    }
+
+    protected static void setFinal(MethodHandle setter, ProtoMessage message, Object value) {
+        ProtoFieldAccessor.invokeSetter(setter, message, value);
+    }
+
+    private static ProtoFieldAccessor accessorOf(MethodHandles.Lookup lookup, Class<?> clazz, String name) {
+        try {
+            return ProtoFieldAccessor.of(lookup, clazz.getDeclaredField(name));
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("No field " + name + " in " + clazz.getName(), e);
+        }
+    }
+
+    static String codecNameOf(Class<?> clazz) {
+        var packageName = clazz.getPackageName();
+        var binaryName = packageName.isEmpty()
+                ? clazz.getName()
+                : clazz.getName().substring(packageName.length() + 1);
+        var codecName = binaryName.replace('$', '_') + CODEC_SUFFIX;
+        return packageName.isEmpty() ? codecName : packageName + "." + codecName;
+    }
+
+    /**
+     * Find the generated codec of the given class.
+     *
+     * @param clazz the class of the protobuf message
+     * @param <T>   the type of the protobuf message
+     * @return the codec, or {@code null} if none has been generated
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends ProtoMessage> @Nullable ProtoCodec<T> lookup(Class<T> clazz) {
+        Class<?> codecClass;
+        try {
+            // not initialized yet, so that a class of the same name which is not a codec never runs its static
+            // initializer; creating the codec below initializes it
+            codecClass = Class.forName(codecNameOf(clazz), false, clazz.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (!ProtoCodec.class.isAssignableFrom(codecClass)) {
+            return null;
+        }
+        try {
+            return (ProtoCodec<T>) codecClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate codec " + codecClass.getName(), e);
+        }
+    }
+}
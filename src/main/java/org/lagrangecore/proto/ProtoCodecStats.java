@@ -0,0 +1,253 @@
+package org.lagrangecore.proto;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link ProtoMetrics} listener that adds up the statistics of each message class in {@link LongAdder}s, so that
+ * threads record without contending. Install it as described in {@link ProtoMetrics}, then read it through
+ * {@link ProtoMetrics#installed()}, or subclass it and override {@link #added(Class, Stats)} to publish the counters
+ * of each class as it appears, such as to a metrics registry.
+ * <p>
+ * The statistics are attached to their class rather than kept in a map, so that they do not keep the class loaders
+ * of message classes alive, and are dropped along with their class.
+ */
+public class ProtoCodecStats implements ProtoMetrics {
+    private final ClassValue<Stats> stats = new ClassValue<>() {
+        @Override
+        protected Stats computeValue(Class<?> type) {
+            return new Stats();
+        }
+    };
+
+    /**
+     * The classes something was recorded for, in the order they appeared, for {@link #forEach(BiConsumer)}.
+     */
+    private final List<WeakReference<Class<? extends ProtoMessage>>> classes = new ArrayList<>();
+
+    @Override
+    public void encoded(Class<? extends ProtoMessage> clazz, int bytes, long nanos) {
+        var stats = statsOf(clazz);
+        stats.encodes.increment();
+        stats.bytesOut.add(bytes);
+        stats.encodeLatency.record(nanos);
+    }
+
+    @Override
+    public void decoded(Class<? extends ProtoMessage> clazz, int bytes, long nanos) {
+        var stats = statsOf(clazz);
+        stats.decodes.increment();
+        stats.bytesIn.add(bytes);
+        stats.decodeLatency.record(nanos);
+    }
+
+    @Override
+    public void unknownField(Class<? extends ProtoMessage> clazz) {
+        statsOf(clazz).unknownFields.increment();
+    }
+
+    @Override
+    public void defaultsFilled(Class<? extends ProtoMessage> clazz, int fields) {
+        statsOf(clazz).defaultFills.add(fields);
+    }
+
+    /**
+     * @param clazz the class of the message
+     * @return the statistics of the class, or {@code null} if nothing was recorded for it
+     */
+    public @Nullable Stats stats(Class<? extends ProtoMessage> clazz) {
+        var stats = this.stats.get(clazz);
+        return stats.added ? stats : null;
+    }
+
+    /**
+     * Run an action on the statistics of each class something was recorded for.
+     *
+     * @param action the action
+     */
+    public void forEach(BiConsumer<Class<? extends ProtoMessage>, Stats> action) {
+        var classes = new ArrayList<Class<? extends ProtoMessage>>();
+        synchronized (this.classes) {
+            var iterator = this.classes.iterator();
+            while (iterator.hasNext()) {
+                var clazz = iterator.next().get();
+                if (clazz == null) {
+                    iterator.remove();
+                } else {
+                    classes.add(clazz);
+                }
+            }
+        }
+        for (var clazz : classes) {
+            action.accept(clazz, stats.get(clazz));
+        }
+    }
+
+    /**
+     * Called once for each class, the first time something is recorded for it.
+     *
+     * @param clazz the class of the message
+     * @param stats the statistics of the class
+     */
+    protected void added(Class<? extends ProtoMessage> clazz, Stats stats) {
+    }
+
+    private Stats statsOf(Class<? extends ProtoMessage> clazz) {
+        var stats = this.stats.get(clazz);
+        if (!stats.added) {
+            add(clazz, stats);
+        }
+        return stats;
+    }
+
+    private void add(Class<? extends ProtoMessage> clazz, Stats stats) {
+        synchronized (classes) {
+            if (stats.added) {
+                return;
+            }
+            classes.add(new WeakReference<>(clazz));
+            stats.added = true;
+        }
+        added(clazz, stats);
+    }
+
+    /**
+     * The statistics of one message class. Each value is a sum that keeps growing, read without stopping recording,
+     * so values read together may be off by the operations in progress.
+     */
+    public static final class Stats {
+        private final LongAdder encodes = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LatencyHistogram encodeLatency = new LatencyHistogram();
+        private final LongAdder decodes = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LatencyHistogram decodeLatency = new LatencyHistogram();
+        private final LongAdder unknownFields = new LongAdder();
+        private final LongAdder defaultFills = new LongAdder();
+        private volatile boolean added;
+
+        private Stats() {
+        }
+
+        /**
+         * @return the number of times messages were serialized, a batch counting once
+         */
+        public long encodes() {
+            return encodes.sum();
+        }
+
+        /**
+         * @return the number of bytes written
+         */
+        public long bytesOut() {
+            return bytesOut.sum();
+        }
+
+        /**
+         * @return the time taken to serialize
+         */
+        public LatencyHistogram encodeLatency() {
+            return encodeLatency;
+        }
+
+        /**
+         * @return the number of messages deserialized
+         */
+        public long decodes() {
+            return decodes.sum();
+        }
+
+        /**
+         * @return the number of bytes read
+         */
+        public long bytesIn() {
+            return bytesIn.sum();
+        }
+
+        /**
+         * @return the time taken to deserialize
+         */
+        public LatencyHistogram decodeLatency() {
+            return decodeLatency;
+        }
+
+        /**
+         * @return the number of fields read that the class does not declare or that were not decoded
+         */
+        public long unknownFields() {
+            return unknownFields.sum();
+        }
+
+        /**
+         * @return the number of fields given their default value, being absent from the decoded data
+         */
+        public long defaultFills() {
+            return defaultFills.sum();
+        }
+    }
+
+    /**
+     * Times in nanoseconds, counted in buckets that double in width: bucket 0 holds times of 0, and bucket
+     * {@code i} times from {@code 2^(i-1)} to {@link #upperBound(int) upperBound(i)}. The last bucket also holds
+     * every longer time.
+     */
+    public static final class LatencyHistogram {
+        /**
+         * The number of buckets, the last one starting at about 4.6 minutes.
+         */
+        public static final int BUCKETS = 40;
+
+        private final LongAdder[] counts = new LongAdder[BUCKETS];
+        private final LongAdder totalNanos = new LongAdder();
+
+        private LatencyHistogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            counts[Math.min(Long.SIZE - Long.numberOfLeadingZeros(nanos), BUCKETS - 1)].increment();
+            totalNanos.add(nanos);
+        }
+
+        /**
+         * @param bucket the index of the bucket
+         * @return the longest time the bucket holds, in nanoseconds
+         */
+        public static long upperBound(int bucket) {
+            return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+
+        /**
+         * @param bucket the index of the bucket
+         * @return the number of times in the bucket
+         */
+        public long count(int bucket) {
+            return counts[bucket].sum();
+        }
+
+        /**
+         * @return the number of times in each bucket
+         */
+        public long[] counts() {
+            var counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = this.counts[i].sum();
+            }
+            return counts;
+        }
+
+        /**
+         * @return the sum of all times, in nanoseconds
+         */
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.lagrangecore.proto;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+
+/**
+ * Creates the serializers and deserializers of message classes ahead of time, so that the first messages encoded or
+ * decoded after startup do not pay for reflection, codec lookup and encoder generation.
+ * <p>
+ * Preloading a class also preloads the classes of the messages nested in it, and each class is run once on an empty
+ * message. Classes are preloaded in parallel, on the common fork-join pool.
+ */
+public final class ProtoCodecs {
+    private static final String CLASS_SUFFIX = ".class";
+
+    private ProtoCodecs() {
+    }
+
+    /**
+     * Preload the given message classes and the classes of the messages nested in them. Each class is warmed up by
+     * decoding and encoding an empty message, which is not reported to {@link ProtoMetrics} nor recorded as an event.
+     *
+     * @param classes the classes of the protobuf messages
+     * @return the number of message classes preloaded, nested ones included
+     * @throws IllegalArgumentException if one of the classes is not a usable protobuf message
+     */
+    public static int preload(Class<?>... classes) {
+        return preload(Arrays.asList(classes));
+    }
+
+    /**
+     * Preload every message class of a package and its subpackages, found by the context class loader of the
+     * current thread.
+     *
+     * @param packageName the name of the package
+     * @return the number of message classes preloaded, nested ones from other packages included
+     * @throws IllegalArgumentException if one of the classes is not a usable protobuf message
+     * @see #preloadPackage(String, ClassLoader)
+     */
+    public static int preloadPackage(String packageName) {
+        var loader = Thread.currentThread().getContextClassLoader();
+        return preloadPackage(packageName, loader != null ? loader : ProtoCodecs.class.getClassLoader());
+    }
+
+    /**
+     * Preload every message class of a package and its subpackages. Only directories and jar files on the class path
+     * of the loader are searched. Abstract, local and anonymous classes are skipped.
+     *
+     * @param packageName the name of the package
+     * @param loader      the class loader to find and load the classes with
+     * @return the number of message classes preloaded, nested ones from other packages included
+     * @throws IllegalArgumentException if one of the classes is not a usable protobuf message
+     */
+    public static int preloadPackage(String packageName, ClassLoader loader) {
+        var classes = new ArrayList<Class<?>>();
+        for (var className : findClassNames(packageName, loader)) {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(className, false, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                // a class that cannot be loaded is not a message in use either
+                continue;
+            }
+            if (ProtoMessage.class.isAssignableFrom(clazz) && clazz != ProtoMessage.class
+                    && !Modifier.isAbstract(clazz.getModifiers())
+                    && !clazz.isLocalClass() && !clazz.isAnonymousClass()) {
+                classes.add(clazz);
+            }
+        }
+        return preload(classes);
+    }
+
+    private static int preload(Collection<Class<?>> classes) {
+        var preloaded = ConcurrentHashMap.<Class<?>>newKeySet();
+        // one level of nesting at a time, the classes of a level in parallel
+        var level = List.copyOf(classes);
+        while (!level.isEmpty()) {
+            level = level.parallelStream()
+                    .filter(preloaded::add)
+                    .flatMap(clazz -> preloadClass(clazz).stream())
+                    .filter(clazz -> !preloaded.contains(clazz))
+                    .distinct()
+                    .toList();
+        }
+        return preloaded.size();
+    }
+
+    /**
+     * @return the classes of the messages nested in the class
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Class<?>> preloadClass(Class<?> clazz) {
+        if (!ProtoMessage.class.isAssignableFrom(clazz)) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " is not a ProtoMessage");
+        }
+        var messageClass = (Class<ProtoMessage>) clazz;
+        var serializer = ProtobufSerializer.of(messageClass);
+        var deserializer = ProtobufDeserializer.of(messageClass);
+        // not reported to the metrics, since no message is actually decoded or encoded
+        serializer.serialize0(deserializer.deserialize0(new byte[0]));
+        return deserializer.nestedMessageClasses();
+    }
+
+    private static Set<String> findClassNames(String packageName, ClassLoader loader) {
+        var path = packageName.replace('.', '/');
+        var classNames = new TreeSet<String>();
+        try {
+            var resources = loader.getResources(path);
+            while (resources.hasMoreElements()) {
+                var url = resources.nextElement();
+                if (url.getProtocol().equals("file")) {
+                    var directory = Path.of(url.toURI());
+                    try (var files = Files.walk(directory)) {
+                        files.filter(file -> file.toString().endsWith(CLASS_SUFFIX))
+                                .forEach(file -> classNames.add(classNameOf(packageName, directory.relativize(file))));
+                    }
+                } else if (url.getProtocol().equals("jar")) {
+                    var connection = (JarURLConnection) url.openConnection();
+                    connection.setUseCaches(false);
+                    try (var jar = connection.getJarFile()) {
+                        var prefix = path.isEmpty() ? "" : path + "/";
+                        jar.stream()
+                                .map(JarEntry::getName)
+                                .filter(name -> name.startsWith(prefix) && name.endsWith(CLASS_SUFFIX))
+                                .forEach(name -> classNames.add(classNameOf("", Path.of(name))));
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+        classNames.removeIf(name -> name.endsWith("module-info") || name.endsWith("package-info"));
+        return classNames;
+    }
+
+    private static String classNameOf(String packageName, Path relativePath) {
+        var name = new StringBuilder(packageName);
+        for (var part : relativePath) {
+            if (!name.isEmpty()) {
+                name.append('.');
+            }
+            name.append(part);
+        }
+        return name.substring(0, name.length() - CLASS_SUFFIX.length());
+    }
+}
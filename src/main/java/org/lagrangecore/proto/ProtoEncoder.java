@@ -0,0 +1,75 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+
+/**
+ * Base class of the encoders that write a protobuf message without going through the reflective field serializers.
+ * <p>
+ * Subclasses are either generated at compile time as part of a {@link ProtoCodec}, or defined at runtime as hidden
+ * classes by {@link ProtobufSerializer}. This class is not meant to be extended by hand.
+ *
+ * @param <T> the type of the protobuf message
+ */
+public abstract class ProtoEncoder<T extends ProtoMessage> {
+    protected ProtoEncoder() {
+    }
+
+    /**
+     * Compute the serialized size of the message body, recording the sizes of nested messages and packed fields.
+     *
+     * @param message the message
+     * @param sizes   the sizes of the current serialization
+     * @return the serialized size in bytes
+     */
+    protected abstract int computeSize(T message, SizeStack sizes);
+
+    /**
+     * Write the message body, reading back the sizes recorded by {@link #computeSize(ProtoMessage, SizeStack)}.
+     *
+     * @param message the message
+     * @param out     the output stream
+     * @param sizes   the sizes of the current serialization
+     */
+    protected abstract void serialize(T message, CodedOutputStream out, SizeStack sizes) throws IOException;
+
+    protected static <M extends ProtoMessage> int sizeOf(ProtobufSerializer<M> serializer, M message, SizeStack sizes) {
+        int slot = sizes.reserve();
+        int size = serializer.computeSize(message, sizes);
+        sizes.set(slot, size);
+        return size;
+    }
+
+    protected static <M extends ProtoMessage> void writeMessageNoTag(
+            ProtobufSerializer<M> serializer, M message, CodedOutputStream out, SizeStack sizes) throws IOException {
+        out.writeUInt32NoTag(sizes.next());
+        serializer.serialize(message, out, sizes);
+    }
+
+    protected static <M extends ProtoMessage> int sizeOf(
+            ProtobufSerializer<M> serializer, Lazy<M> message, SizeStack sizes) {
+        var bytes = message.undecodedBytes();
+        return bytes != null ? bytes.size() : sizeOf(serializer, message.get(), sizes);
+    }
+
+    protected static <M extends ProtoMessage> void writeMessageNoTag(
+            ProtobufSerializer<M> serializer, Lazy<M> message, CodedOutputStream out, SizeStack sizes)
+            throws IOException {
+        var bytes = message.undecodedBytes();
+        if (bytes != null) {
+            out.writeUInt32NoTag(bytes.size());
+            out.writeRawBytes(bytes);
+        } else {
+            writeMessageNoTag(serializer, message.get(), out, sizes);
+        }
+    }
+
+    protected static void pushLength(SizeStack sizes, int length) {
+        sizes.push(length);
+    }
+
+    protected static int nextLength(SizeStack sizes) {
+        return sizes.next();
+    }
+}
@@ -0,0 +1,154 @@
+package org.lagrangecore.proto;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads and writes one field of a message through a {@link VarHandle}, which also works for private fields.
+ * <p>
+ * A {@code VarHandle} of a final field is read-only, so final fields are written through a setter
+ * {@link MethodHandle} instead. Being a record, the handles are trusted as constants by the JIT once the accessor
+ * itself is.
+ *
+ * @param handle      the handle of the field
+ * @param finalSetter the setter of the field, typed {@code (ProtoMessage, Object)void}, if the field is final
+ */
+record ProtoFieldAccessor(VarHandle handle, @Nullable MethodHandle finalSetter) {
+    /**
+     * The accessors of the fields of each class by field name, made once per field. Kept by the class itself, so
+     * that they do not keep its class loader alive.
+     */
+    private static final ClassValue<Map<String, ProtoFieldAccessor>> accessors = new ClassValue<>() {
+        @Override
+        protected Map<String, ProtoFieldAccessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * Get the accessor of a field, made on first use.
+     */
+    static ProtoFieldAccessor of(Field field) {
+        return accessors.get(field.getDeclaringClass())
+                .computeIfAbsent(field.getName(), name -> of(MethodHandles.lookup(), field));
+    }
+
+    /**
+     * Get the accessors of fields, to be kept along with them.
+     *
+     * @return the accessor of each field, in the same order
+     */
+    static ProtoFieldAccessor[] of(List<ProtoFieldDescriptor> descriptors) {
+        var accessors = new ProtoFieldAccessor[descriptors.size()];
+        for (int i = 0; i < accessors.length; i++) {
+            accessors[i] = descriptors.get(i).accessor();
+        }
+        return accessors;
+    }
+
+    static ProtoFieldAccessor of(MethodHandles.Lookup caller, Field field) {
+        try {
+            var lookup = MethodHandles.privateLookupIn(field.getDeclaringClass(), caller);
+            MethodHandle finalSetter = null;
+            if (Modifier.isFinal(field.getModifiers())) {
+                field.setAccessible(true);
+                finalSetter = lookup.unreflectSetter(field)
+                        .asType(MethodType.methodType(void.class, ProtoMessage.class, Object.class));
+            }
+            return new ProtoFieldAccessor(lookup.unreflectVarHandle(field), finalSetter);
+        } catch (IllegalAccessException | InaccessibleObjectException e) {
+            throw new IllegalArgumentException("Cannot access field " + field.getName()
+                    + " of " + field.getDeclaringClass().getName(), e);
+        }
+    }
+
+    Object get(ProtoMessage message) {
+        return handle.get(message);
+    }
+
+    int getInt(ProtoMessage message) {
+        return (int) handle.get(message);
+    }
+
+    long getLong(ProtoMessage message) {
+        return (long) handle.get(message);
+    }
+
+    float getFloat(ProtoMessage message) {
+        return (float) handle.get(message);
+    }
+
+    double getDouble(ProtoMessage message) {
+        return (double) handle.get(message);
+    }
+
+    boolean getBoolean(ProtoMessage message) {
+        return (boolean) handle.get(message);
+    }
+
+    void set(ProtoMessage message, Object value) {
+        if (finalSetter != null) {
+            invokeSetter(finalSetter, message, value);
+        } else {
+            handle.set(message, value);
+        }
+    }
+
+    void setInt(ProtoMessage message, int value) {
+        if (finalSetter != null) {
+            invokeSetter(finalSetter, message, value);
+        } else {
+            handle.set(message, value);
+        }
+    }
+
+    void setLong(ProtoMessage message, long value) {
+        if (finalSetter != null) {
+            invokeSetter(finalSetter, message, value);
+        } else {
+            handle.set(message, value);
+        }
+    }
+
+    void setFloat(ProtoMessage message, float value) {
+        if (finalSetter != null) {
+            invokeSetter(finalSetter, message, value);
+        } else {
+            handle.set(message, value);
+        }
+    }
+
+    void setDouble(ProtoMessage message, double value) {
+        if (finalSetter != null) {
+            invokeSetter(finalSetter, message, value);
+        } else {
+            handle.set(message, value);
+        }
+    }
+
+    void setBoolean(ProtoMessage message, boolean value) {
+        if (finalSetter != null) {
+            invokeSetter(finalSetter, message, value);
+        } else {
+            handle.set(message, value);
+        }
+    }
+
+    static void invokeSetter(MethodHandle setter, ProtoMessage message, Object value) {
+        try {
+            setter.invokeExact(message, value);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot set final field", e);
+        }
+    }
+}
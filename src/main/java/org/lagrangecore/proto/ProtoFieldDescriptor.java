@@ -101,6 +101,20 @@ public record ProtoFieldDescriptor(
             }
         }
 
+        if (field.getType() == Lazy.class) {
+            if (field.getGenericType() instanceof ParameterizedType parameterizedType
+                    && parameterizedType.getActualTypeArguments()[0] instanceof Class<?> messageClass
+                    && ProtoMessage.class.isAssignableFrom(messageClass)) {
+                return new ProtoFieldDescriptor(
+                        protoField.value(), WireFormat.FieldType.MESSAGE,
+                        field.isAnnotationPresent(Nullable.class), false, false,
+                        field, messageClass
+                );
+            } else {
+                throw new IllegalArgumentException("Unsupported field type: " + field.getGenericType().getTypeName());
+            }
+        }
+
         return new ProtoFieldDescriptor(
                 field.getAnnotation(ProtoField.class).value(),
                 typeMappedTo == null
@@ -135,98 +149,161 @@ public record ProtoFieldDescriptor(
         }
     }
 
-    void computeSerializedSize(ProtoMessage message) throws IllegalAccessException {
+    /**
+     * @return whether the field holds a {@link Lazy} nested message
+     */
+    boolean isLazy() {
+        return declaredField.getType() == Lazy.class;
+    }
+
+    /**
+     * Look up the accessor of the field, kept out of the components so that the record stays as it was published.
+     * Done once when a serializer or deserializer is built, which keeps the accessor for every message.
+     *
+     * @return the accessor of the field
+     */
+    ProtoFieldAccessor accessor() {
+        return ProtoFieldAccessor.of(declaredField);
+    }
+
+    /**
+     * Compute the serialized size of this field of the message, tag included.
+     *
+     * @param accessor the {@linkplain #accessor() accessor} of the field
+     */
+    int computeSerializedSize(ProtoMessage message, ProtoFieldAccessor accessor, SizeStack sizes) {
         int tagSize = CodedOutputStream.computeTagSize(fieldNumber);
         if (isRepeated) {
-            @Nullable var list = (List<?>) declaredField.get(message);
+            @Nullable var list = (List<?>) accessor.get(message);
             if (list == null || list.isEmpty()) {
-                return;
+                return 0;
             }
             if (isPacked) {
-                int repeatedSize = calculateRepeatedSerializedSize(list);
+                int repeatedSize = calculateRepeatedSerializedSize(list, sizes);
                 int packedLengthSize = CodedOutputStream.computeUInt32SizeNoTag(repeatedSize);
-                message.lengthDelimitedFieldSizes.put(fieldNumber, repeatedSize);
-                message.serializedSize += tagSize + packedLengthSize + repeatedSize;
+                sizes.push(repeatedSize);
+                return tagSize + packedLengthSize + repeatedSize;
             } else {
-                message.serializedSize += tagSize * list.size() + calculateRepeatedSerializedSize(list);
+                return tagSize * list.size() + calculateRepeatedSerializedSize(list, sizes);
             }
         } else {
-            var valueSize = calculateSingleSerializedSize(message);
-            message.serializedSize += valueSize == -1 ? 0 : tagSize + valueSize;
+            var valueSize = calculateSingleSerializedSize(message, accessor, sizes);
+            return valueSize == -1 ? 0 : tagSize + valueSize;
         }
     }
 
     @SuppressWarnings("unchecked")
-    private int calculateRepeatedSerializedSize(@NotNull List<?> list) {
+    private int calculateRepeatedSerializedSize(@NotNull List<?> list, SizeStack sizes) {
         return switch (fieldType) {
-            case INT32 -> ((IntList) list).intStream().map(CodedOutputStream::computeInt32SizeNoTag).sum();
-            case INT64 -> ((LongList) list).longStream().mapToInt(CodedOutputStream::computeInt64SizeNoTag).sum();
-            case UINT32 -> ((IntList) list).intStream().map(CodedOutputStream::computeUInt32SizeNoTag).sum();
-            case UINT64 -> ((LongList) list).longStream().mapToInt(CodedOutputStream::computeUInt64SizeNoTag).sum();
-            case SINT32 -> ((IntList) list).intStream().map(CodedOutputStream::computeSInt32SizeNoTag).sum();
-            case SINT64 -> ((LongList) list).longStream().mapToInt(CodedOutputStream::computeSInt64SizeNoTag).sum();
-            case FIXED32 -> ((IntList) list).intStream().map(CodedOutputStream::computeFixed32SizeNoTag).sum();
-            case FIXED64 -> ((LongList) list).longStream().mapToInt(CodedOutputStream::computeFixed64SizeNoTag).sum();
-            case SFIXED32 -> ((IntList) list).intStream().map(CodedOutputStream::computeSFixed32SizeNoTag).sum();
-            case SFIXED64 -> ((LongList) list).longStream().mapToInt(CodedOutputStream::computeSFixed64SizeNoTag).sum();
-            case FLOAT -> ((FloatList) list).doubleStream().mapToInt(
-                    value -> CodedOutputStream.computeFloatSizeNoTag((float) value)).sum();
-            case DOUBLE -> ((DoubleList) list).doubleStream().mapToInt(CodedOutputStream::computeDoubleSizeNoTag).sum();
-            case BOOL -> ((BooleanList) list).stream().mapToInt(CodedOutputStream::computeBoolSizeNoTag).sum();
-            case STRING -> list.stream().mapToInt(o -> CodedOutputStream.computeStringSizeNoTag((String) o)).sum();
-            case BYTES -> list.stream().mapToInt(o -> CodedOutputStream.computeBytesSizeNoTag((ByteString) o)).sum();
+            case INT32 -> {
+                var ints = (IntList) list;
+                int size = 0;
+                for (int i = 0, n = ints.size(); i < n; i++) {
+                    size += CodedOutputStream.computeInt32SizeNoTag(ints.getInt(i));
+                }
+                yield size;
+            }
+            case UINT32 -> {
+                var ints = (IntList) list;
+                int size = 0;
+                for (int i = 0, n = ints.size(); i < n; i++) {
+                    size += CodedOutputStream.computeUInt32SizeNoTag(ints.getInt(i));
+                }
+                yield size;
+            }
+            case SINT32 -> {
+                var ints = (IntList) list;
+                int size = 0;
+                for (int i = 0, n = ints.size(); i < n; i++) {
+                    size += CodedOutputStream.computeSInt32SizeNoTag(ints.getInt(i));
+                }
+                yield size;
+            }
+            case INT64, UINT64 -> {
+                var longs = (LongList) list;
+                int size = 0;
+                for (int i = 0, n = longs.size(); i < n; i++) {
+                    size += CodedOutputStream.computeUInt64SizeNoTag(longs.getLong(i));
+                }
+                yield size;
+            }
+            case SINT64 -> {
+                var longs = (LongList) list;
+                int size = 0;
+                for (int i = 0, n = longs.size(); i < n; i++) {
+                    size += CodedOutputStream.computeSInt64SizeNoTag(longs.getLong(i));
+                }
+                yield size;
+            }
+            case FIXED32, SFIXED32, FLOAT -> list.size() * Integer.BYTES;
+            case FIXED64, SFIXED64, DOUBLE -> list.size() * Long.BYTES;
+            case BOOL -> list.size();
+            case STRING -> {
+                int size = 0;
+                for (var o : list) {
+                    size += CodedOutputStream.computeStringSizeNoTag((String) o);
+                }
+                yield size;
+            }
+            case BYTES -> {
+                int size = 0;
+                for (var o : list) {
+                    size += CodedOutputStream.computeByteArraySizeNoTag((byte[]) o);
+                }
+                yield size;
+            }
             case MESSAGE -> {
                 var serializer = ProtobufSerializer.of((Class<ProtoMessage>) actualType);
-                yield list.stream().mapToInt(o -> {
-                    try {
-                        int bodySize = serializer.computeSize((ProtoMessage) o);
-                        int lengthSize = CodedOutputStream.computeUInt32SizeNoTag(bodySize);
-                        return lengthSize + bodySize;
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                }).sum();
+                int size = 0;
+                for (var o : list) {
+                    int bodySize = ProtoEncoder.sizeOf(serializer, (ProtoMessage) o, sizes);
+                    size += CodedOutputStream.computeUInt32SizeNoTag(bodySize) + bodySize;
+                }
+                yield size;
             }
             default -> throw new IllegalArgumentException("Unsupported field type");
         };
     }
 
     @SuppressWarnings("unchecked")
-    private int calculateSingleSerializedSize(ProtoMessage msg) throws IllegalAccessException {
+    private int calculateSingleSerializedSize(ProtoMessage msg, ProtoFieldAccessor accessor, SizeStack sizes) {
         return switch (fieldType) {
-            case INT32 -> CodedOutputStream.computeInt32SizeNoTag(declaredField.getInt(msg));
-            case INT64 -> CodedOutputStream.computeInt64SizeNoTag(declaredField.getLong(msg));
-            case UINT32 -> CodedOutputStream.computeUInt32SizeNoTag(declaredField.getInt(msg));
-            case UINT64 -> CodedOutputStream.computeUInt64SizeNoTag(declaredField.getLong(msg));
-            case SINT32 -> CodedOutputStream.computeSInt32SizeNoTag(declaredField.getInt(msg));
-            case SINT64 -> CodedOutputStream.computeSInt64SizeNoTag(declaredField.getLong(msg));
-            case FIXED32 -> CodedOutputStream.computeFixed32SizeNoTag(declaredField.getInt(msg));
-            case FIXED64 -> CodedOutputStream.computeFixed64SizeNoTag(declaredField.getLong(msg));
-            case SFIXED32 -> CodedOutputStream.computeSFixed32SizeNoTag(declaredField.getInt(msg));
-            case SFIXED64 -> CodedOutputStream.computeSFixed64SizeNoTag(declaredField.getLong(msg));
-            case FLOAT -> CodedOutputStream.computeFloatSizeNoTag(declaredField.getFloat(msg));
-            case DOUBLE -> CodedOutputStream.computeDoubleSizeNoTag(declaredField.getDouble(msg));
-            case BOOL -> CodedOutputStream.computeBoolSizeNoTag(declaredField.getBoolean(msg));
+            case INT32 -> CodedOutputStream.computeInt32SizeNoTag(accessor.getInt(msg));
+            case INT64 -> CodedOutputStream.computeInt64SizeNoTag(accessor.getLong(msg));
+            case UINT32 -> CodedOutputStream.computeUInt32SizeNoTag(accessor.getInt(msg));
+            case UINT64 -> CodedOutputStream.computeUInt64SizeNoTag(accessor.getLong(msg));
+            case SINT32 -> CodedOutputStream.computeSInt32SizeNoTag(accessor.getInt(msg));
+            case SINT64 -> CodedOutputStream.computeSInt64SizeNoTag(accessor.getLong(msg));
+            case FIXED32 -> CodedOutputStream.computeFixed32SizeNoTag(accessor.getInt(msg));
+            case FIXED64 -> CodedOutputStream.computeFixed64SizeNoTag(accessor.getLong(msg));
+            case SFIXED32 -> CodedOutputStream.computeSFixed32SizeNoTag(accessor.getInt(msg));
+            case SFIXED64 -> CodedOutputStream.computeSFixed64SizeNoTag(accessor.getLong(msg));
+            case FLOAT -> CodedOutputStream.computeFloatSizeNoTag(accessor.getFloat(msg));
+            case DOUBLE -> CodedOutputStream.computeDoubleSizeNoTag(accessor.getDouble(msg));
+            case BOOL -> CodedOutputStream.computeBoolSizeNoTag(accessor.getBoolean(msg));
             case STRING -> {
-                @Nullable var string = (String) declaredField.get(msg);
+                @Nullable var string = (String) accessor.get(msg);
                 if (string == null || string.isEmpty()) {
                     yield -1; // Should not serialize this field
                 }
                 yield CodedOutputStream.computeStringSizeNoTag(string);
             }
             case BYTES -> {
-                byte @Nullable [] bytes = (byte[]) declaredField.get(msg);
+                byte @Nullable [] bytes = (byte[]) accessor.get(msg);
                 if (bytes == null || bytes.length == 0) {
                     yield -1; // Should not serialize this field
                 }
                 yield CodedOutputStream.computeByteArraySizeNoTag(bytes);
             }
             case MESSAGE -> {
-                @Nullable var message = (ProtoMessage) declaredField.get(msg);
-                if (message == null) {
+                @Nullable var value = accessor.get(msg);
+                if (value == null) {
                     yield -1; // Should not serialize this field
                 }
-                int bodySize = ProtobufSerializer.of((Class<ProtoMessage>) actualType).computeSize(message);
+                var serializer = ProtobufSerializer.of((Class<ProtoMessage>) actualType);
+                int bodySize = value instanceof Lazy<?> lazy
+                        ? ProtoEncoder.sizeOf(serializer, (Lazy<ProtoMessage>) lazy, sizes)
+                        : ProtoEncoder.sizeOf(serializer, (ProtoMessage) value, sizes);
                 int lengthSize = CodedOutputStream.computeUInt32SizeNoTag(bodySize);
                 yield lengthSize + bodySize;
             }
@@ -234,6 +311,223 @@ public record ProtoFieldDescriptor(
         };
     }
 
+    /**
+     * Write this field of the message in a single pass, the same as the field serializer would.
+     *
+     * @param accessor the {@linkplain #accessor() accessor} of the field
+     */
+    void writeSinglePass(ProtoMessage message, ProtoFieldAccessor accessor, SinglePassOutput out) {
+        if (isRepeated) {
+            @Nullable var list = (List<?>) accessor.get(message);
+            if (list == null || list.isEmpty()) {
+                return;
+            }
+            if (isPacked) {
+                out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                int start = out.beginLengthDelimited(maxPackedSize(list.size()));
+                writeValues(list, 0, out);
+                out.endLengthDelimited(start);
+            } else {
+                writeRepeated(list, out);
+            }
+        } else {
+            writeSingle(message, accessor, out);
+        }
+    }
+
+    private int maxPackedSize(int count) {
+        return switch (fieldType) {
+            case INT32, INT64, UINT64, SINT64 -> count * 10;
+            case UINT32, SINT32 -> count * 5;
+            case FIXED32, SFIXED32, FLOAT -> count * Integer.BYTES;
+            case FIXED64, SFIXED64, DOUBLE -> count * Long.BYTES;
+            case BOOL -> count;
+            default -> -1;
+        };
+    }
+
+    /**
+     * Write the values of a list of scalars, each preceded by the given tag unless it is 0.
+     */
+    private void writeValues(List<?> list, int tag, SinglePassOutput out) {
+        switch (fieldType) {
+            case INT32 -> {
+                var ints = (IntList) list;
+                for (int i = 0, n = ints.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeInt32(ints.getInt(i));
+                }
+            }
+            case UINT32 -> {
+                var ints = (IntList) list;
+                for (int i = 0, n = ints.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeUInt32(ints.getInt(i));
+                }
+            }
+            case SINT32 -> {
+                var ints = (IntList) list;
+                for (int i = 0, n = ints.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeUInt32(CodedOutputStream.encodeZigZag32(ints.getInt(i)));
+                }
+            }
+            case FIXED32, SFIXED32 -> {
+                var ints = (IntList) list;
+                for (int i = 0, n = ints.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeFixed32(ints.getInt(i));
+                }
+            }
+            case INT64, UINT64 -> {
+                var longs = (LongList) list;
+                for (int i = 0, n = longs.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeUInt64(longs.getLong(i));
+                }
+            }
+            case SINT64 -> {
+                var longs = (LongList) list;
+                for (int i = 0, n = longs.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeUInt64(CodedOutputStream.encodeZigZag64(longs.getLong(i)));
+                }
+            }
+            case FIXED64, SFIXED64 -> {
+                var longs = (LongList) list;
+                for (int i = 0, n = longs.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeFixed64(longs.getLong(i));
+                }
+            }
+            case FLOAT -> {
+                var floats = (FloatList) list;
+                for (int i = 0, n = floats.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeFixed32(Float.floatToRawIntBits(floats.getFloat(i)));
+                }
+            }
+            case DOUBLE -> {
+                var doubles = (DoubleList) list;
+                for (int i = 0, n = doubles.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeFixed64(Double.doubleToRawLongBits(doubles.getDouble(i)));
+                }
+            }
+            case BOOL -> {
+                var booleans = (BooleanList) list;
+                for (int i = 0, n = booleans.size(); i < n; i++) {
+                    if (tag != 0) {
+                        out.writeUInt32(tag);
+                    }
+                    out.writeUInt32(booleans.getBoolean(i) ? 1 : 0);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported field type");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeRepeated(List<?> list, SinglePassOutput out) {
+        switch (fieldType) {
+            case STRING -> {
+                for (var o : list) {
+                    out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                    out.writeString((String) o);
+                }
+            }
+            case BYTES -> {
+                for (var o : list) {
+                    out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                    out.writeBytes((byte[]) o);
+                }
+            }
+            case MESSAGE -> {
+                var serializer = ProtobufSerializer.of((Class<ProtoMessage>) actualType);
+                for (var o : list) {
+                    out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                    int start = out.beginLengthDelimited(-1);
+                    serializer.writeSinglePass((ProtoMessage) o, out);
+                    out.endLengthDelimited(start);
+                }
+            }
+            default -> writeValues(list, (fieldNumber << 3) | fieldType.getWireType(), out);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeSingle(ProtoMessage msg, ProtoFieldAccessor accessor, SinglePassOutput out) {
+        switch (fieldType) {
+            case STRING -> {
+                @Nullable var string = (String) accessor.get(msg);
+                if (string != null && !string.isEmpty()) {
+                    out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                    out.writeString(string);
+                }
+            }
+            case BYTES -> {
+                byte @Nullable [] bytes = (byte[]) accessor.get(msg);
+                if (bytes != null && bytes.length != 0) {
+                    out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                    out.writeBytes(bytes);
+                }
+            }
+            case MESSAGE -> {
+                @Nullable var value = accessor.get(msg);
+                if (value == null) {
+                    return;
+                }
+                out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                var message = value;
+                if (value instanceof Lazy<?> lazy) {
+                    var bytes = lazy.undecodedBytes();
+                    if (bytes != null) {
+                        out.writeBytes(bytes);
+                        return;
+                    }
+                    message = lazy.get();
+                }
+                int start = out.beginLengthDelimited(-1);
+                ProtobufSerializer.of((Class<ProtoMessage>) actualType).writeSinglePass((ProtoMessage) message, out);
+                out.endLengthDelimited(start);
+            }
+            default -> {
+                out.writeTag(fieldNumber, fieldType.getWireType());
+                switch (fieldType) {
+                    case INT32 -> out.writeInt32(accessor.getInt(msg));
+                    case UINT32 -> out.writeUInt32(accessor.getInt(msg));
+                    case SINT32 -> out.writeUInt32(CodedOutputStream.encodeZigZag32(accessor.getInt(msg)));
+                    case FIXED32, SFIXED32 -> out.writeFixed32(accessor.getInt(msg));
+                    case INT64, UINT64 -> out.writeUInt64(accessor.getLong(msg));
+                    case SINT64 -> out.writeUInt64(CodedOutputStream.encodeZigZag64(accessor.getLong(msg)));
+                    case FIXED64, SFIXED64 -> out.writeFixed64(accessor.getLong(msg));
+                    case FLOAT -> out.writeFixed32(Float.floatToRawIntBits(accessor.getFloat(msg)));
+                    case DOUBLE -> out.writeFixed64(Double.doubleToRawLongBits(accessor.getDouble(msg)));
+                    case BOOL -> out.writeUInt32(accessor.getBoolean(msg) ? 1 : 0);
+                    default -> throw new IllegalArgumentException("Unsupported field type");
+                }
+            }
+        }
+    }
+
     @Override
     public int compareTo(@NotNull ProtoFieldDescriptor o) {
         return Integer.compare(fieldNumber, o.fieldNumber);
@@ -1,5 +1,6 @@
 package org.lagrangecore.proto;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.WireFormat;
 import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
@@ -14,7 +15,6 @@ import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongList;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,436 +44,438 @@ public interface ProtoFieldDeserializer {
     }
 
     static ProtoFieldDeserializer forInt32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (IntList) desc.declaredField().get(draft);
-                if (list == null) {
-                    list = new IntArrayList();
-                    desc.declaredField().set(draft, list);
-                }
+            return (draft, in, source, wireType) -> {
+                var list = (IntList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
+                    if (list == null) {
+                        list = new IntArrayList();
+                        accessor.set(draft, list);
+                    }
                     list.add(in.readInt32());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var input = CodedInputStream.newInstance(in.readByteBuffer());
-                    while (!input.isAtEnd()) {
-                        list.add(input.readInt32());
+                    var packed = PackedFields.readInt32(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
-                    desc.declaredField().set(draft, in.readInt32());
+                    accessor.setInt(draft, in.readInt32());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forInt64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (LongList) desc.declaredField().get(draft);
-                if (list == null) {
-                    list = new LongArrayList();
-                    desc.declaredField().set(draft, list);
-                }
+            return (draft, in, source, wireType) -> {
+                var list = (LongList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
+                    if (list == null) {
+                        list = new LongArrayList();
+                        accessor.set(draft, list);
+                    }
                     list.add(in.readInt64());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var input = CodedInputStream.newInstance(in.readByteBuffer());
-                    while (!input.isAtEnd()) {
-                        list.add(input.readInt64());
+                    var packed = PackedFields.readInt64(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
-                    desc.declaredField().set(draft, in.readInt64());
+                    accessor.setLong(draft, in.readInt64());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forUInt32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (IntList) desc.declaredField().get(draft);
-                if (list == null) {
-                    list = new IntArrayList();
-                    desc.declaredField().set(draft, list);
-                }
+            return (draft, in, source, wireType) -> {
+                var list = (IntList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
+                    if (list == null) {
+                        list = new IntArrayList();
+                        accessor.set(draft, list);
+                    }
                     list.add(in.readUInt32());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var input = CodedInputStream.newInstance(in.readByteBuffer());
-                    while (!input.isAtEnd()) {
-                        list.add(input.readUInt32());
+                    var packed = PackedFields.readUInt32(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
-                    desc.declaredField().set(draft, in.readUInt32());
+                    accessor.setInt(draft, in.readUInt32());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forUInt64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (LongList) desc.declaredField().get(draft);
-                if (list == null) {
-                    list = new LongArrayList();
-                    desc.declaredField().set(draft, list);
-                }
+            return (draft, in, source, wireType) -> {
+                var list = (LongList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
+                    if (list == null) {
+                        list = new LongArrayList();
+                        accessor.set(draft, list);
+                    }
                     list.add(in.readUInt64());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var input = CodedInputStream.newInstance(in.readByteBuffer());
-                    while (!input.isAtEnd()) {
-                        list.add(input.readUInt64());
+                    var packed = PackedFields.readUInt64(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
-                    desc.declaredField().set(draft, in.readUInt64());
+                    accessor.setLong(draft, in.readUInt64());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forSInt32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (IntList) desc.declaredField().get(draft);
-                if (list == null) {
-                    list = new IntArrayList();
-                    desc.declaredField().set(draft, list);
-                }
+            return (draft, in, source, wireType) -> {
+                var list = (IntList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
+                    if (list == null) {
+                        list = new IntArrayList();
+                        accessor.set(draft, list);
+                    }
                     list.add(in.readSInt32());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var input = CodedInputStream.newInstance(in.readByteBuffer());
-                    while (!input.isAtEnd()) {
-                        list.add(input.readSInt32());
+                    var packed = PackedFields.readSInt32(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
-                    desc.declaredField().set(draft, in.readSInt32());
+                    accessor.setInt(draft, in.readSInt32());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forSInt64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (LongList) desc.declaredField().get(draft);
-                if (list == null) {
-                    list = new LongArrayList();
-                    desc.declaredField().set(draft, list);
-                }
+            return (draft, in, source, wireType) -> {
+                var list = (LongList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
+                    if (list == null) {
+                        list = new LongArrayList();
+                        accessor.set(draft, list);
+                    }
                     list.add(in.readSInt64());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var input = CodedInputStream.newInstance(in.readByteBuffer());
-                    while (!input.isAtEnd()) {
-                        list.add(input.readSInt64());
+                    var packed = PackedFields.readSInt64(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
-                    desc.declaredField().set(draft, in.readSInt64());
+                    accessor.setLong(draft, in.readSInt64());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forFixed32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (IntList) desc.declaredField().get(draft);
+            return (draft, in, source, wireType) -> {
+                var list = (IntList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_FIXED32) {
                     if (list == null) {
                         list = new IntArrayList();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readFixed32());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    int size = in.readUInt32() / 4;
-                    if (list == null) {
-                        list = new IntArrayList(size);
-                        desc.declaredField().set(draft, list);
-                    }
-                    for (int i = 0; i < size; i++) {
-                        list.add(in.readFixed32());
+                    var packed = PackedFields.readFixed32(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_FIXED32) {
-                    desc.declaredField().set(draft, in.readFixed32());
+                    accessor.setInt(draft, in.readFixed32());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forFixed64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (LongList) desc.declaredField().get(draft);
+            return (draft, in, source, wireType) -> {
+                var list = (LongList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_FIXED64) {
                     if (list == null) {
                         list = new LongArrayList();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readFixed64());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    int size = in.readUInt32() / 8;
-                    if (list == null) {
-                        list = new LongArrayList(size);
-                        desc.declaredField().set(draft, list);
-                    }
-                    for (int i = 0; i < size; i++) {
-                        list.add(in.readFixed64());
+                    var packed = PackedFields.readFixed64(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_FIXED64) {
-                    desc.declaredField().set(draft, in.readFixed64());
+                    accessor.setLong(draft, in.readFixed64());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forSFixed32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (IntList) desc.declaredField().get(draft);
+            return (draft, in, source, wireType) -> {
+                var list = (IntList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_FIXED32) {
                     if (list == null) {
                         list = new IntArrayList();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readSFixed32());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    int size = in.readUInt32() / 4;
-                    if (list == null) {
-                        list = new IntArrayList(size);
-                        desc.declaredField().set(draft, list);
-                    }
-                    for (int i = 0; i < size; i++) {
-                        list.add(in.readSFixed32());
+                    var packed = PackedFields.readSFixed32(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_FIXED32) {
-                    desc.declaredField().set(draft, in.readSFixed32());
+                    accessor.setInt(draft, in.readSFixed32());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forSFixed64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (LongList) desc.declaredField().get(draft);
+            return (draft, in, source, wireType) -> {
+                var list = (LongList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_FIXED64) {
                     if (list == null) {
                         list = new LongArrayList();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readSFixed64());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    int size = in.readUInt32() / 8;
-                    if (list == null) {
-                        list = new LongArrayList(size);
-                        desc.declaredField().set(draft, list);
-                    }
-                    for (int i = 0; i < size; i++) {
-                        list.add(in.readSFixed64());
+                    var packed = PackedFields.readSFixed64(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_FIXED64) {
-                    desc.declaredField().set(draft, in.readSFixed64());
+                    accessor.setLong(draft, in.readSFixed64());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forFloat(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (FloatList) desc.declaredField().get(draft);
+            return (draft, in, source, wireType) -> {
+                var list = (FloatList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_FIXED32) {
                     if (list == null) {
                         list = new FloatArrayList();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readFloat());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    int size = in.readUInt32() / 4;
-                    if (list == null) {
-                        list = new FloatArrayList(size);
-                        desc.declaredField().set(draft, list);
-                    }
-                    for (int i = 0; i < size; i++) {
-                        list.add(in.readFloat());
+                    var packed = PackedFields.readFloat(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_FIXED32) {
-                    desc.declaredField().set(draft, in.readFloat());
+                    accessor.setFloat(draft, in.readFloat());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forDouble(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (DoubleList) desc.declaredField().get(draft);
+            return (draft, in, source, wireType) -> {
+                var list = (DoubleList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_FIXED64) {
                     if (list == null) {
                         list = new DoubleArrayList();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readDouble());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    int size = in.readUInt32() / 8;
-                    if (list == null) {
-                        list = new DoubleArrayList(size);
-                        desc.declaredField().set(draft, list);
-                    }
-                    for (int i = 0; i < size; i++) {
-                        list.add(in.readDouble());
+                    var packed = PackedFields.readDouble(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_FIXED64) {
-                    desc.declaredField().set(draft, in.readDouble());
+                    accessor.setDouble(draft, in.readDouble());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forBool(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
-                var list = (BooleanList) desc.declaredField().get(draft);
+            return (draft, in, source, wireType) -> {
+                var list = (BooleanList) accessor.get(draft);
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
                     if (list == null) {
                         list = new BooleanArrayList();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readBool());
                 } else if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    int size = in.readUInt32();
-                    if (list == null) {
-                        list = new BooleanArrayList(size);
-                        desc.declaredField().set(draft, list);
-                    }
-                    for (int i = 0; i < size; i++) {
-                        list.add(in.readBool());
+                    var packed = PackedFields.readBool(in, list);
+                    if (packed != list) {
+                        accessor.set(draft, packed);
                     }
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_VARINT) {
-                    desc.declaredField().set(draft, in.readBool());
+                    accessor.setBoolean(draft, in.readBool());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forString(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var list = (List<String>) desc.declaredField().get(draft);
+                    var list = (List<String>) accessor.get(draft);
                     if (list == null) {
                         list = new ArrayList<>();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readString());
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    desc.declaredField().set(draft, in.readString());
+                    accessor.set(draft, in.readString());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forBytes(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var list = (List<byte[]>) desc.declaredField().get(draft);
+                    var list = (List<byte[]>) accessor.get(draft);
                     if (list == null) {
                         list = new ArrayList<>();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
                     list.add(in.readByteArray());
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    desc.declaredField().set(draft, in.readByteArray());
+                    accessor.set(draft, in.readByteArray());
                 }
             };
         }
     }
 
     static ProtoFieldDeserializer forMessage(ProtoFieldDescriptor desc) {
-        var deserializer = ProtobufDeserializer.of((Class<ProtoMessage>) desc.actualType());
+        var accessor = desc.accessor();
+        // looked up on first use, since the nested class may contain this one
+        var deserializer = ProtobufDeserializer.nested((Class<ProtoMessage>) desc.actualType());
         if (desc.isRepeated()) {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    var list = (List<ProtoMessage>) desc.declaredField().get(draft);
+                    var list = (List<ProtoMessage>) accessor.get(draft);
                     if (list == null) {
                         list = new ArrayList<>();
-                        desc.declaredField().set(draft, list);
+                        accessor.set(draft, list);
                     }
-                    list.add(deserializer.deserialize(in.readByteArray()));
+                    list.add(deserializer.get().readMessage(in, source));
+                }
+            };
+        } else if (desc.isLazy()) {
+            return (draft, in, source, wireType) -> {
+                if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    accessor.set(draft, deserializer.get().readLazy(in));
                 }
             };
         } else {
-            return (draft, in, wireType) -> {
+            return (draft, in, source, wireType) -> {
                 if (wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
-                    desc.declaredField().set(draft, deserializer.deserialize(in.readByteArray()));
+                    var current = (ProtoMessage) accessor.get(draft);
+                    accessor.set(draft, deserializer.get().readMessage(in, source, current));
                 }
             };
         }
     }
 
-    void deserialize(ProtoMessage draft, CodedInputStream in, int wireType) throws
-            IOException, IllegalAccessException, InvocationTargetException,
-            NoSuchMethodException, InstantiationException;
+    /**
+     * Read the value of the field into the message.
+     *
+     * @param draft    the message being deserialized
+     * @param in       the input stream, positioned right after the tag
+     * @param source   the bytes the input stream reads, which nested messages keep unknown fields as views of
+     * @param wireType the wire type of the tag that was just read
+     */
+    void deserialize(ProtoMessage draft, CodedInputStream in, ByteString source, int wireType) throws IOException;
 }
@@ -37,22 +37,23 @@ public interface ProtoFieldSerializer {
     }
 
     static ProtoFieldSerializer forInt32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeInt32NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -62,30 +63,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getInt(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getInt(msg);
                 out.writeInt32(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forInt64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeInt64NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -95,30 +97,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getLong(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getLong(msg);
                 out.writeInt64(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forUInt32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeUInt32NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -128,30 +131,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getInt(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getInt(msg);
                 out.writeUInt32(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forUInt64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeUInt64NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -161,30 +165,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getLong(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getLong(msg);
                 out.writeUInt64(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forSInt32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeSInt32NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -194,30 +199,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getInt(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getInt(msg);
                 out.writeSInt32(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forSInt64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeSInt64NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -227,30 +233,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getLong(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getLong(msg);
                 out.writeSInt64(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forFixed32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeFixed32NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -260,30 +267,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getInt(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getInt(msg);
                 out.writeFixed32(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forFixed64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeFixed64NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -293,30 +301,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getLong(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getLong(msg);
                 out.writeFixed64(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forSFixed32(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeSFixed32NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (IntList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (IntList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -326,30 +335,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getInt(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getInt(msg);
                 out.writeSFixed32(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forSFixed64(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeSFixed64NoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (LongList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (LongList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -359,30 +369,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getLong(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getLong(msg);
                 out.writeSFixed64(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forFloat(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (FloatList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (FloatList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeFloatNoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (FloatList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (FloatList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -392,30 +403,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getFloat(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getFloat(msg);
                 out.writeFloat(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forDouble(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (DoubleList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (DoubleList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeDoubleNoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (DoubleList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (DoubleList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -425,30 +437,31 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getDouble(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getDouble(msg);
                 out.writeDouble(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forBoolean(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
             if (desc.isPacked()) {
-                return (msg, out) -> {
-                    var list = (BooleanList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (BooleanList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(msg.lengthDelimitedFieldSizes.get(desc.fieldNumber()));
+                    out.writeUInt32NoTag(sizes.next());
                     for (var value : list) {
                         out.writeBoolNoTag(value);
                     }
                 };
             } else {
-                return (msg, out) -> {
-                    var list = (BooleanList) desc.declaredField().get(msg);
+                return (msg, out, sizes) -> {
+                    var list = (BooleanList) accessor.get(msg);
                     if (list == null || list.isEmpty()) {
                         return;
                     }
@@ -458,17 +471,18 @@ public interface ProtoFieldSerializer {
                 };
             }
         } else {
-            return (msg, out) -> {
-                var value = desc.declaredField().getBoolean(msg);
+            return (msg, out, sizes) -> {
+                var value = accessor.getBoolean(msg);
                 out.writeBool(desc.fieldNumber(), value);
             };
         }
     }
 
     static ProtoFieldSerializer forString(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (msg, out) -> {
-                var list = (List<String>) desc.declaredField().get(msg);
+            return (msg, out, sizes) -> {
+                var list = (List<String>) accessor.get(msg);
                 if (list == null || list.isEmpty()) {
                     return;
                 }
@@ -477,8 +491,8 @@ public interface ProtoFieldSerializer {
                 }
             };
         } else {
-            return (msg, out) -> {
-                var value = (String) desc.declaredField().get(msg);
+            return (msg, out, sizes) -> {
+                var value = (String) accessor.get(msg);
                 if (value == null || value.isEmpty()) {
                     return;
                 }
@@ -488,9 +502,10 @@ public interface ProtoFieldSerializer {
     }
 
     static ProtoFieldSerializer forBytes(ProtoFieldDescriptor desc) {
+        var accessor = desc.accessor();
         if (desc.isRepeated()) {
-            return (msg, out) -> {
-                var list = (List<byte[]>) desc.declaredField().get(msg);
+            return (msg, out, sizes) -> {
+                var list = (List<byte[]>) accessor.get(msg);
                 if (list == null || list.isEmpty()) {
                     return;
                 }
@@ -499,8 +514,8 @@ public interface ProtoFieldSerializer {
                 }
             };
         } else {
-            return (msg, out) -> {
-                var value = (byte[]) desc.declaredField().get(msg);
+            return (msg, out, sizes) -> {
+                var value = (byte[]) accessor.get(msg);
                 if (value == null || value.length == 0) {
                     return;
                 }
@@ -510,31 +525,42 @@ public interface ProtoFieldSerializer {
     }
 
     static ProtoFieldSerializer forMessage(ProtoFieldDescriptor desc) {
-        var serializer = ProtobufSerializer.of((Class<ProtoMessage>) desc.actualType());
+        var accessor = desc.accessor();
+        // looked up on first use, since the nested class may contain this one
+        var serializer = ProtobufSerializer.nested((Class<ProtoMessage>) desc.actualType());
         if (desc.isRepeated()) {
-            return (msg, out) -> {
-                var list = (List<ProtoMessage>) desc.declaredField().get(msg);
+            return (msg, out, sizes) -> {
+                var list = (List<ProtoMessage>) accessor.get(msg);
                 if (list == null || list.isEmpty()) {
                     return;
                 }
                 for (var value : list) {
                     out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                    out.writeUInt32NoTag(value.serializedSize);
-                    serializer.serialize(value, out);
+                    out.writeUInt32NoTag(sizes.next());
+                    serializer.get().serialize(value, out, sizes);
                 }
             };
+        } else if (desc.isLazy()) {
+            return (msg, out, sizes) -> {
+                var value = (Lazy<ProtoMessage>) accessor.get(msg);
+                if (value == null) {
+                    return;
+                }
+                out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                ProtoEncoder.writeMessageNoTag(serializer.get(), value, out, sizes);
+            };
         } else {
-            return (msg, out) -> {
-                var value = (ProtoMessage) desc.declaredField().get(msg);
+            return (msg, out, sizes) -> {
+                var value = (ProtoMessage) accessor.get(msg);
                 if (value == null) {
                     return;
                 }
                 out.writeTag(desc.fieldNumber(), WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                out.writeUInt32NoTag(value.serializedSize);
-                serializer.serialize(value, out);
+                out.writeUInt32NoTag(sizes.next());
+                serializer.get().serialize(value, out, sizes);
             };
         }
     }
 
-    void serialize(ProtoMessage msg, CodedOutputStream out) throws IOException, IllegalAccessException;
+    void serialize(ProtoMessage msg, CodedOutputStream out, SizeStack sizes) throws IOException;
 }
@@ -1,12 +1,71 @@
 package org.lagrangecore.proto;
 
-import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import com.google.protobuf.ByteString;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A message that can be serialized and deserialized using the protobuf format.
+ * <p>
+ * The serialized size of a message is recomputed every time it is serialized, so a message can be freely modified
+ * and serialized again. If a message is serialized many times without being modified, {@link #freeze()} it to keep
+ * the size computed the first time.
  */
 public abstract class ProtoMessage {
-    int serializedSize = 0;
+    boolean frozen = false;
 
-    Int2IntMap lengthDelimitedFieldSizes = null;
+    /**
+     * The size of a frozen message followed by the sizes recorded for it, see {@link SizeStack#snapshot(int, int)}.
+     */
+    volatile int @Nullable [] frozenSizes = null;
+
+    /**
+     * Set by {@link ProtobufDeserializer#clear(ProtoMessage)} on a nested message it kept, so that the next value of
+     * the field is decoded into it instead of into a new message.
+     */
+    boolean reusable = false;
+
+    /**
+     * The fields read into this message that its class does not declare, in their encoded form. They are written
+     * back out after the declared fields.
+     */
+    @Nullable ByteString unknownFields = null;
+
+    /**
+     * Get the fields read into this message that its class does not declare, such as fields added by a newer
+     * version of the schema. They are kept byte for byte as they were read, as views of the array or buffer the
+     * message was deserialized from.
+     *
+     * @return the encoded fields, empty if there are none
+     */
+    public final ByteString getUnknownFields() {
+        return unknownFields == null ? ByteString.EMPTY : unknownFields;
+    }
+
+    /**
+     * Keep the serialized size of this message once computed, instead of recomputing it every time the message is
+     * serialized. This promises that neither this message nor any message nested in it is modified afterward, unless
+     * {@link #invalidateSize()} is called. A frozen message can be serialized from several threads at once without
+     * recomputing its size.
+     */
+    public final void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Check whether the serialized size of this message is kept once computed.
+     *
+     * @return {@code true} if {@link #freeze()} has been called
+     */
+    public final boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Drop the kept serialized size of a frozen message after modifying it, so that it is recomputed the next time the
+     * message is serialized. When a nested message is modified, call this on it and on every frozen message
+     * containing it. Has no effect on a message that is not frozen.
+     */
+    public final void invalidateSize() {
+        frozenSizes = null;
+    }
 }
@@ -0,0 +1,177 @@
+package org.lagrangecore.proto;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of cleared messages of one class, which the deserializer of that class takes new messages from.
+ * <p>
+ * Once a pool exists for a class, every message of that class the deserializer creates comes from the pool if it has
+ * one: top-level messages, nested messages and the elements of repeated fields. {@link #release(ProtoMessage)} clears
+ * a message and hands it back. Clearing a message, as releasing does, hands the elements of its repeated message
+ * fields back to their own pools, while its singular nested messages stay with it and are decoded into again.
+ * <p>
+ * The pool is split into shards picked by the current thread, each holding up to the capacity of the pool. A thread
+ * that finds its shard in use by another one does not wait: it allocates a new message, or drops the one it releases.
+ *
+ * @param <T> the type of the protobuf message
+ */
+public final class ProtoMessagePool<T extends ProtoMessage> {
+    /**
+     * The default number of messages each shard holds.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final int SHARD_COUNT
+            = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) * 2;
+
+    private final Class<T> clazz;
+    private final int capacity;
+    private final ProtobufDeserializer<T> deserializer;
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private ProtoMessagePool(Class<T> clazz, int capacity, ProtobufDeserializer<T> deserializer) {
+        this.clazz = clazz;
+        this.capacity = capacity;
+        this.deserializer = deserializer;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(capacity);
+        }
+    }
+
+    /**
+     * Get the pool of the given class, with the default capacity.
+     *
+     * @param clazz the class of the protobuf message
+     * @param <T>   the type of the protobuf message
+     * @return the pool; if it does not exist, a new one is created and used by the deserializer of the class
+     */
+    public static <T extends ProtoMessage> ProtoMessagePool<T> of(Class<T> clazz) {
+        return of(clazz, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Get the pool of the given class.
+     *
+     * @param clazz    the class of the protobuf message
+     * @param capacity the number of messages each shard of the pool holds
+     * @param <T>      the type of the protobuf message
+     * @return the pool; if it does not exist, a new one is created and used by the deserializer of the class
+     * @throws IllegalStateException if the pool of the class already exists with another capacity
+     */
+    public static <T extends ProtoMessage> ProtoMessagePool<T> of(Class<T> clazz, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        // kept by the deserializer, which is kept by the class
+        var deserializer = ProtobufDeserializer.of(clazz);
+        var pool = deserializer.pool;
+        if (pool == null) {
+            synchronized (deserializer) {
+                pool = deserializer.pool;
+                if (pool == null) {
+                    pool = new ProtoMessagePool<>(clazz, capacity, deserializer);
+                    deserializer.pool = pool;
+                }
+            }
+        }
+        if (pool.capacity != capacity) {
+            throw new IllegalStateException("Pool of " + clazz.getName()
+                    + " already exists with a capacity of " + pool.capacity);
+        }
+        return pool;
+    }
+
+    /**
+     * Take a cleared message from the pool, or create and clear one if the pool has none for the current thread.
+     *
+     * @return the message
+     */
+    public T acquire() {
+        var message = poll();
+        if (message == null) {
+            message = deserializer.newMessage();
+            deserializer.clear(message);
+        }
+        return message;
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable T poll() {
+        var shard = shard();
+        T message = null;
+        if (shard.lock.tryLock()) {
+            try {
+                if (shard.size > 0) {
+                    message = (T) shard.messages[--shard.size];
+                    shard.messages[shard.size] = null;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        if (message != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return message;
+    }
+
+    /**
+     * Clear a message and hand it back to the pool. The message must not be used afterward, nor be referenced by
+     * another message, since it will be handed out again.
+     *
+     * @param message the message
+     * @throws IllegalArgumentException if the message is not exactly of the class of the pool
+     */
+    public void release(T message) {
+        if (message.getClass() != clazz) {
+            throw new IllegalArgumentException("Cannot pool a " + message.getClass().getName()
+                    + " with messages of " + clazz.getName());
+        }
+        deserializer.clear(message);
+        var shard = shard();
+        if (shard.lock.tryLock()) {
+            try {
+                if (shard.size < capacity) {
+                    shard.messages[shard.size++] = message;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages taken from the pool so far
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of times the pool had no message to give, and one was created instead
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    private Shard shard() {
+        return shards[(int) Thread.currentThread().threadId() & (shards.length - 1)];
+    }
+
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        final ProtoMessage[] messages;
+        int size = 0;
+
+        Shard(int capacity) {
+            messages = new ProtoMessage[capacity];
+        }
+    }
+}
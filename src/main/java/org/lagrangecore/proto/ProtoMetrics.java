@@ -0,0 +1,61 @@
+package org.lagrangecore.proto;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Receives statistics about the messages proto-anno serializes and deserializes, by message class, such as to find
+ * the messages that take the most time. {@link ProtoCodecStats} keeps them in counters.
+ * <p>
+ * A listener is installed once, when a message is first serialized or deserialized: the class named by the system
+ * property {@code org.lagrangecore.proto.metrics} if it is set, otherwise the first provider of this interface found
+ * by {@link java.util.ServiceLoader}. Either way the class needs a public no-argument constructor. Without a listener
+ * nothing is timed or counted, and the checks for one are compiled away.
+ * <p>
+ * Only calls made from outside proto-anno are counted and timed, such as {@link ProtobufSerializer#serialize}, not
+ * the nested messages they encode or decode. Unknown fields and default values are reported for nested messages too,
+ * under their own class. Methods are called on the thread doing the work, so they must be thread-safe and quick.
+ */
+public interface ProtoMetrics {
+    /**
+     * Called after a message, or a batch of messages, is serialized.
+     *
+     * @param clazz the class of the message
+     * @param bytes the number of bytes written, including the sizes before delimited messages
+     * @param nanos the time taken, in nanoseconds
+     */
+    void encoded(Class<? extends ProtoMessage> clazz, int bytes, long nanos);
+
+    /**
+     * Called after a message is deserialized.
+     *
+     * @param clazz the class of the message
+     * @param bytes the number of bytes read
+     * @param nanos the time taken, in nanoseconds
+     */
+    void decoded(Class<? extends ProtoMessage> clazz, int bytes, long nanos);
+
+    /**
+     * Called for each field read that the message class does not declare, or does not decode with
+     * {@link ProtobufDeserializer#withFields(int...)}.
+     *
+     * @param clazz the class of the message
+     */
+    default void unknownField(Class<? extends ProtoMessage> clazz) {
+    }
+
+    /**
+     * Called when fields absent from the decoded data are given their default values.
+     *
+     * @param clazz  the class of the message
+     * @param fields the number of fields
+     */
+    default void defaultsFilled(Class<? extends ProtoMessage> clazz, int fields) {
+    }
+
+    /**
+     * @return the installed listener, or {@code null} if there is none
+     */
+    static @Nullable ProtoMetrics installed() {
+        return CodecMetrics.LISTENER;
+    }
+}
@@ -1,23 +1,29 @@
 package org.lagrangecore.proto;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.UnsafeByteOperations;
 import com.google.protobuf.WireFormat;
 import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
-import it.unimi.dsi.fastutil.booleans.BooleanList;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
-import it.unimi.dsi.fastutil.doubles.DoubleList;
 import it.unimi.dsi.fastutil.floats.FloatArrayList;
-import it.unimi.dsi.fastutil.floats.FloatList;
 import it.unimi.dsi.fastutil.ints.*;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongList;
+import org.jetbrains.annotations.Nullable;
 import org.lagrangecore.proto.annotations.ProtoField;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Spliterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A deserializer for protobuf messages.
@@ -25,12 +31,61 @@ import java.util.concurrent.ConcurrentMap;
  * @param <T> the type of the protobuf message
  */
 public final class ProtobufDeserializer<T extends ProtoMessage> {
-    private static final ConcurrentMap<Class<?>, ProtobufDeserializer<? extends ProtoMessage>> deserializers
-            = new ConcurrentHashMap<>();
+    private static final CodecRegistry<ProtobufDeserializer<?>> deserializers
+            = new CodecRegistry<>(ProtobufDeserializer::create);
+
+    /**
+     * Whether absent fields share immutable default values instead of getting new ones.
+     */
+    private static final boolean SHARE_DEFAULTS
+            = Boolean.parseBoolean(System.getProperty("org.lagrangecore.proto.sharedDefaults", "false"));
 
     private final Class<T> clazz;
     private final List<ProtoFieldDescriptor> fieldDescriptors = new ArrayList<>();
-    private final Int2ObjectMap<ProtoFieldDeserializer> fieldDeserializers = new Int2ObjectOpenHashMap<>();
+
+    /**
+     * The accessors of the fields, parallel to {@link #fieldDescriptors}, with which they are cleared.
+     */
+    private final ProtoFieldAccessor[] fieldAccessors;
+
+    private final @Nullable ProtoCodec<T> codec;
+
+    /**
+     * The no-argument constructor of the class, typed {@code ()ProtoMessage}, called if there is no codec.
+     */
+    private final MethodHandle constructor;
+
+    /**
+     * Finds the fields by number, with their deserializers if there is no codec.
+     */
+    private final FieldDispatch dispatch;
+
+    /**
+     * The defaults of the fields absent from decoded data, shared if {@link #SHARE_DEFAULTS} is set.
+     */
+    private final DefaultPlan absentDefaults;
+
+    /**
+     * The defaults that {@link #clear(ProtoMessage)} gives, never shared, since a cleared message is filled again.
+     */
+    private final DefaultPlan defaults;
+
+    private volatile @Nullable T sharedEmptyMessage;
+
+    /**
+     * The numbers of the fields to decode, or {@code null} to decode all of them.
+     */
+    private final @Nullable IntSet fieldMask;
+
+    /**
+     * A message as the no-argument constructor leaves it, which {@link #clear(ProtoMessage)} resets fields to.
+     */
+    private volatile @Nullable T prototype;
+
+    /**
+     * The pool new messages are taken from, set on the deserializer returned by {@link #of(Class)}.
+     */
+    volatile @Nullable ProtoMessagePool<T> pool;
 
     private ProtobufDeserializer(Class<T> clazz) {
         this.clazz = clazz;
@@ -40,20 +95,79 @@ public final class ProtobufDeserializer<T extends ProtoMessage> {
         }
 
         try {
-            clazz.getDeclaredConstructor();
+            constructor = constructorOf(MethodHandles.lookup(), clazz);
         } catch (NoSuchMethodException e) {
             throw new IllegalArgumentException("Class " + clazz.getName() + " does not have a no-argument constructor", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access the constructor of " + clazz.getName(), e);
         }
 
+        codec = ProtoCodec.lookup(clazz);
+        fieldMask = null;
+
         var fields = clazz.getDeclaredFields();
         for (var field : fields) {
             var protoField = field.getAnnotation(ProtoField.class);
             if (protoField != null) {
                 var fieldDescriptor = ProtoFieldDescriptor.fromField(field, protoField);
                 fieldDescriptors.add(fieldDescriptor);
-                fieldDeserializers.put(protoField.value(), ProtoFieldDeserializer.create(fieldDescriptor));
             }
         }
+        // the index of a field in this list identifies it in the dispatch and the default plan
+        fieldDescriptors.sort(null);
+        fieldAccessors = ProtoFieldAccessor.of(fieldDescriptors);
+        dispatch = FieldDispatch.of(fieldDescriptors, codec == null);
+        defaults = DefaultPlan.of(fieldDescriptors, false);
+        absentDefaults = SHARE_DEFAULTS ? DefaultPlan.of(fieldDescriptors, true) : defaults;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ProtobufDeserializer<?> create(Class<?> clazz) {
+        var event = CodecMetrics.buildEvent();
+        var deserializer = new ProtobufDeserializer<>((Class<ProtoMessage>) clazz);
+        if (event != null) {
+            var implementation = deserializer.codec != null ? "generated codec" : "reflection";
+            CodecEvents.commitBuild(event, clazz, "deserializer", implementation, deserializer.fieldDescriptors.size());
+        }
+        return deserializer;
+    }
+
+    private ProtobufDeserializer(ProtobufDeserializer<T> parent, IntSet fieldMask) {
+        this.clazz = parent.clazz;
+        this.codec = parent.codec;
+        this.constructor = parent.constructor;
+        this.fieldMask = fieldMask;
+        for (var fieldDescriptor : parent.fieldDescriptors) {
+            if (fieldMask.contains(fieldDescriptor.fieldNumber())) {
+                fieldDescriptors.add(fieldDescriptor);
+            }
+        }
+        this.fieldAccessors = ProtoFieldAccessor.of(fieldDescriptors);
+        this.dispatch = parent.dispatch.filter(fieldMask);
+        this.defaults = DefaultPlan.of(fieldDescriptors, false);
+        this.absentDefaults = SHARE_DEFAULTS ? DefaultPlan.of(fieldDescriptors, true) : defaults;
+    }
+
+    /**
+     * Get a deserializer that decodes only the given fields. The other fields are skipped without being decoded,
+     * and left as the no-argument constructor of the message class initializes them, which is usually
+     * {@code null} or zero.
+     * <p>
+     * The deserializer is not cached; keep it to reuse it.
+     *
+     * @param fieldNumbers the numbers of the fields to decode
+     * @return the deserializer
+     * @throws IllegalArgumentException if one of the fields is not decoded by this deserializer
+     */
+    public ProtobufDeserializer<T> withFields(int... fieldNumbers) {
+        var fieldMask = new IntOpenHashSet(fieldNumbers.length);
+        for (var fieldNumber : fieldNumbers) {
+            if (fieldDescriptors.stream().noneMatch(desc -> desc.fieldNumber() == fieldNumber)) {
+                throw new IllegalArgumentException("No field " + fieldNumber + " to decode in " + clazz.getName());
+            }
+            fieldMask.add(fieldNumber);
+        }
+        return new ProtobufDeserializer<>(this, fieldMask);
     }
 
     /**
@@ -65,78 +179,417 @@ public final class ProtobufDeserializer<T extends ProtoMessage> {
      */
     @SuppressWarnings("unchecked")
     public static <T extends ProtoMessage> ProtobufDeserializer<T> of(Class<T> clazz) {
-        if (!deserializers.containsKey(clazz)) {
-            deserializers.putIfAbsent(clazz, new ProtobufDeserializer<>(clazz));
-        }
         return (ProtobufDeserializer<T>) deserializers.get(clazz);
     }
 
-    private static void setDefaultValueFor(ProtoMessage message, ProtoFieldDescriptor desc)
-            throws IllegalAccessException, NoSuchMethodException,
-            InvocationTargetException, InstantiationException {
-        var declaredField = desc.declaredField();
-        var clazz = declaredField.getType();
-        if (declaredField.get(message) == null) {
-            if (clazz == String.class && !desc.isOptional()) {
-                declaredField.set(message, "");
-            } else if (clazz == byte[].class && !desc.isOptional()) {
-                declaredField.set(message, new byte[0]);
-            } else if (clazz == IntList.class) {
-                declaredField.set(message, new IntArrayList());
-            } else if (clazz == LongList.class) {
-                declaredField.set(message, new LongArrayList());
-            } else if (clazz == FloatList.class) {
-                declaredField.set(message, new FloatArrayList());
-            } else if (clazz == DoubleList.class) {
-                declaredField.set(message, new DoubleArrayList());
-            } else if (clazz == BooleanList.class) {
-                declaredField.set(message, new BooleanArrayList());
-            } else if (clazz == List.class) {
-                declaredField.set(message, new ArrayList<>());
-            } else {
-                if (!desc.isOptional()) {
-                    var emptyDraft = clazz.getDeclaredConstructor().newInstance();
-                    setDefaultValueFor((ProtoMessage) emptyDraft, desc);
-                    declaredField.set(message, emptyDraft);
-                }
-            }
-        }
+    /**
+     * Get the deserializer of a nested message class, created on first use rather than along with the deserializer
+     * of the enclosing class.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends ProtoMessage> Supplier<ProtobufDeserializer<T>> nested(Class<T> clazz) {
+        return (Supplier<ProtobufDeserializer<T>>) (Supplier<?>) deserializers.entry(clazz);
+    }
+
+    /**
+     * @return the classes of the messages nested in this one, including lazy ones and elements of repeated fields
+     */
+    List<Class<?>> nestedMessageClasses() {
+        return fieldDescriptors.stream()
+                .filter(desc -> desc.fieldType() == WireFormat.FieldType.MESSAGE)
+                .<Class<?>>map(desc -> (Class<?>) desc.actualType())
+                .toList();
     }
 
     /**
      * Deserialize a protobuf message from a byte array.
+     * <p>
+     * The message does not copy every byte it keeps: its {@linkplain ProtoMessage#getUnknownFields() unknown fields}
+     * and undecoded {@link Lazy} fields, and those of the messages nested in it, are views of {@code data}, which must
+     * not be modified while they are used.
      *
      * @param data the data to deserialize
      * @return the deserialized message
      */
     public T deserialize(byte[] data) {
+        var event = CodecMetrics.deserializeEvent();
+        long start = CodecMetrics.start(event);
+        var stream = CodedInputStream.newInstance(data);
+        // aliasing lets packed fields be decoded straight from the data, see PackedFields
+        stream.enableAliasing(true);
+        try {
+            var message = deserialize(stream, UnsafeByteOperations.unsafeWrap(data));
+            CodecMetrics.decoded(clazz, data.length, start, event);
+            return message;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Deserialize a protobuf message from a byte array without reporting it to the metrics or taking it from the
+     * pool, e.g. to warm the deserializer up.
+     */
+    T deserialize0(byte[] data) {
+        var stream = CodedInputStream.newInstance(data);
+        stream.enableAliasing(true);
+        try {
+            var message = newMessage();
+            absentDefaults.apply(message, readFields(message, stream, UnsafeByteOperations.unsafeWrap(data)));
+            return message;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Deserialize a protobuf message from a byte array into an existing message, which is
+     * {@linkplain #clear(ProtoMessage) cleared} first. The lists and nested messages it holds are filled again
+     * instead of being replaced, so a message deserialized into over and over allocates little once its lists have
+     * grown to size.
+     *
+     * @param message the message to deserialize into
+     * @param data    the data to deserialize
+     */
+    public void deserializeInto(T message, byte[] data) {
+        var event = CodecMetrics.deserializeEvent();
+        long start = CodecMetrics.start(event);
+        var stream = CodedInputStream.newInstance(data);
+        stream.enableAliasing(true);
+        try {
+            deserializeInto(message, stream, UnsafeByteOperations.unsafeWrap(data));
+            CodecMetrics.decoded(clazz, data.length, start, event);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Deserialize a protobuf message from the remaining bytes of a buffer into an existing message, like
+     * {@link #deserializeInto(ProtoMessage, byte[])}. The position of the buffer is left unchanged. The unknown and
+     * undecoded lazy fields of the message are views of the buffer, which must not be modified while they are used.
+     *
+     * @param message the message to deserialize into
+     * @param data    the data to deserialize
+     */
+    public void deserializeInto(T message, ByteBuffer data) {
+        var event = CodecMetrics.deserializeEvent();
+        long start = CodecMetrics.start(event);
+        var stream = CodedInputStream.newInstance(data);
+        stream.enableAliasing(true);
+        try {
+            deserializeInto(message, stream, UnsafeByteOperations.unsafeWrap(data));
+            CodecMetrics.decoded(clazz, data.remaining(), start, event);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Deserialize the messages of a buffer in parallel, each preceded by its size as a varint, as written by
+     * {@link ProtobufSerializer#writeDelimitedTo(ProtoMessage, java.io.OutputStream)} or
+     * {@link ProtobufSerializer#serializeBatch(List)}. The messages are read from the position of the buffer to its
+     * limit, and the position is left unchanged.
+     * <p>
+     * The buffer is scanned first for where each message starts, reading only their sizes, and the messages are then
+     * split into ranges decoded on the common fork-join pool, or on the {@link java.util.concurrent.ForkJoinPool} the
+     * terminal operation is started from. The stream is ordered; call {@link Stream#unordered()} on it when the order
+     * of the messages does not matter. Like the messages deserialized from an array, the messages refer to the
+     * buffer, which must not be modified while they are used.
+     *
+     * @param data the messages
+     * @return a parallel stream of the messages
+     */
+    public Stream<T> parallelStream(ByteBuffer data) {
+        return StreamSupport.stream(spliterator(data), true);
+    }
+
+    /**
+     * Get a spliterator over the messages of a buffer, each preceded by its size as a varint, to decode them in
+     * parallel as {@link #parallelStream(ByteBuffer)} does.
+     *
+     * @param data the messages
+     * @return the spliterator
+     */
+    public Spliterator<T> spliterator(ByteBuffer data) {
+        return DelimitedSpliterator.of(this, data);
+    }
+
+    private void deserializeInto(T message, CodedInputStream stream, ByteString source) throws IOException {
+        clear(message);
+        readFields(message, stream, source);
+    }
+
+    /**
+     * Reset every field of a message to the value the no-argument constructor gives it, or to its default value
+     * where that is {@code null}, and drop its unknown fields. The message is no longer frozen afterward.
+     * <p>
+     * Lists of the types the deserializer creates, such as {@link IntArrayList} and {@link ArrayList}, are emptied
+     * instead of replaced. Nested messages are cleared in turn and kept, unless they are frozen, since a frozen
+     * message may be shared; the next {@link #deserializeInto(ProtoMessage, byte[])} decodes into them.
+     *
+     * @param message the message to clear
+     */
+    public void clear(T message) {
+        if (fieldMask != null) {
+            of(clazz).clear(message);
+            return;
+        }
+        var prototype = prototype();
+        var accessors = fieldAccessors;
+        for (int i = 0; i < accessors.length; i++) {
+            clearField(message, prototype, fieldDescriptors.get(i), accessors[i]);
+        }
+        defaults.apply(message, 0L);
+        message.unknownFields = null;
+        message.frozen = false;
+        message.frozenSizes = null;
+    }
+
+    /**
+     * Create a message with the no-argument constructor, leaving its fields as it does.
+     */
+    @SuppressWarnings("unchecked")
+    T newMessage() {
+        var codec = this.codec;
+        return codec != null ? codec.newMessage() : (T) construct(constructor);
+    }
+
+    /**
+     * Get the no-argument constructor of a message class, typed {@code ()ProtoMessage}.
+     */
+    static MethodHandle constructorOf(MethodHandles.Lookup caller, Class<?> clazz)
+            throws NoSuchMethodException, IllegalAccessException {
+        return MethodHandles.privateLookupIn(clazz, caller)
+                .findConstructor(clazz, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(ProtoMessage.class));
+    }
+
+    static ProtoMessage construct(MethodHandle constructor) {
         try {
-            var message = clazz.getDeclaredConstructor().newInstance();
-            var stream = CodedInputStream.newInstance(data);
-            var visitedSet = new IntArraySet();
-
-            while (!stream.isAtEnd()) {
-                var tag = stream.readTag();
-                var fieldNumber = WireFormat.getTagFieldNumber(tag);
-                var wireType = WireFormat.getTagWireType(tag);
-                var fieldDescriptor = fieldDeserializers.get(fieldNumber);
-                if (fieldDescriptor == null) {
+            return (ProtoMessage) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Create a message as decoding empty data would, taken from the pool of the class if it has one.
+     */
+    T emptyMessage() {
+        var pool = this.pool;
+        if (pool != null) {
+            return pool.acquire();
+        }
+        var message = newMessage();
+        defaults.apply(message, 0L);
+        return message;
+    }
+
+    /**
+     * Get the frozen empty message that absent fields of this class share.
+     */
+    T sharedEmptyMessage() {
+        var message = sharedEmptyMessage;
+        if (message == null) {
+            message = newMessage();
+            absentDefaults.apply(message, 0L);
+            message.freeze();
+            sharedEmptyMessage = message;
+        }
+        return message;
+    }
+
+    private T prototype() {
+        var prototype = this.prototype;
+        if (prototype == null) {
+            prototype = newMessage();
+            this.prototype = prototype;
+        }
+        return prototype;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void clearField(ProtoMessage message, ProtoMessage prototype, ProtoFieldDescriptor desc,
+                                   ProtoFieldAccessor accessor) {
+        var clazz = desc.declaredField().getType();
+        if (clazz == int.class) {
+            accessor.setInt(message, accessor.getInt(prototype));
+            return;
+        } else if (clazz == long.class) {
+            accessor.setLong(message, accessor.getLong(prototype));
+            return;
+        } else if (clazz == float.class) {
+            accessor.setFloat(message, accessor.getFloat(prototype));
+            return;
+        } else if (clazz == double.class) {
+            accessor.setDouble(message, accessor.getDouble(prototype));
+            return;
+        } else if (clazz == boolean.class) {
+            accessor.setBoolean(message, accessor.getBoolean(prototype));
+            return;
+        } else if (clazz == String.class) {
+            accessor.set(message, accessor.get(prototype));
+            return;
+        }
+
+        var value = accessor.get(message);
+        if (value instanceof ArrayList<?> list && desc.fieldType() == WireFormat.FieldType.MESSAGE) {
+            releaseAll(list, (Class<ProtoMessage>) desc.actualType());
+            list.clear();
+        } else if (value instanceof IntArrayList || value instanceof LongArrayList
+                || value instanceof FloatArrayList || value instanceof DoubleArrayList
+                || value instanceof BooleanArrayList || value instanceof ArrayList) {
+            ((Collection<?>) value).clear();
+        } else if (!desc.isOptional() && value instanceof ProtoMessage nested
+                && nested.getClass() == clazz && !nested.frozen) {
+            of((Class<ProtoMessage>) clazz).clear(nested);
+            nested.reusable = true;
+        } else {
+            // left to the default plan
+            var initial = clazz == byte[].class ? (byte[]) accessor.get(prototype) : null;
+            accessor.set(message, initial == null ? null : initial.clone());
+        }
+    }
+
+    /**
+     * Hand the elements of a repeated message field back to the pool of their class, if it has one. Frozen elements
+     * are left alone, since they may be shared.
+     */
+    private static void releaseAll(List<?> list, Class<ProtoMessage> clazz) {
+        var pool = of(clazz).pool;
+        if (pool == null) {
+            return;
+        }
+        for (var element : list) {
+            if (element instanceof ProtoMessage message && message.getClass() == clazz && !message.frozen) {
+                pool.release(message);
+            }
+        }
+    }
+
+    /**
+     * Read a length-delimited nested message in place, under a limit on the parent stream.
+     *
+     * @param in     the parent stream, positioned at the length of the nested message
+     * @param source the bytes the parent stream reads, see {@link #deserialize(CodedInputStream, ByteString)}
+     * @return the nested message
+     */
+    T readMessage(CodedInputStream in, ByteString source) throws IOException {
+        return readMessage(in, source, null);
+    }
+
+    /**
+     * Read a length-delimited nested message in place, into the current value of the field if
+     * {@link #clear(ProtoMessage)} kept it to be reused.
+     *
+     * @param in      the parent stream, positioned at the length of the nested message
+     * @param source  the bytes the parent stream reads, see {@link #deserialize(CodedInputStream, ByteString)}
+     * @param current the current value of the field
+     * @return the nested message
+     */
+    T readMessage(CodedInputStream in, ByteString source, @Nullable T current) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        T message;
+        if (current != null && current.reusable) {
+            current.reusable = false;
+            readFields(current, in, source);
+            message = current;
+        } else {
+            message = deserialize(in, source);
+        }
+        in.popLimit(limit);
+        return message;
+    }
+
+    /**
+     * Read a length-delimited nested message without decoding it. The bytes are a view of the parent stream if it
+     * aliases its input.
+     *
+     * @param in the parent stream, positioned at the length of the nested message
+     * @return the undecoded nested message
+     */
+    Lazy<T> readLazy(CodedInputStream in) throws IOException {
+        return Lazy.wrap(this, UnsafeByteOperations.unsafeWrap(in.readByteBuffer()));
+    }
+
+    /**
+     * Read a field the message class does not declare, and append it to the unknown fields of the message. The field
+     * is skipped and kept as a view of the bytes it was read from, tag included.
+     *
+     * @param source the bytes the stream reads
+     * @param start  the number of bytes the stream had read before the tag of the field
+     */
+    private static void readUnknownField(ProtoMessage message, CodedInputStream stream, ByteString source, int tag,
+                                         int start) throws IOException {
+        stream.skipField(tag);
+        var field = source.substring(start, stream.getTotalBytesRead());
+        var unknownFields = message.unknownFields;
+        message.unknownFields = unknownFields == null ? field : unknownFields.concat(field);
+    }
+
+    /**
+     * Deserialize a protobuf message from the stream, up to its end or its current limit.
+     *
+     * @param stream the input stream
+     * @param source the bytes the stream reads, from its first byte on, which unknown fields are kept as views of
+     * @return the deserialized message
+     */
+    T deserialize(CodedInputStream stream, ByteString source) throws IOException {
+        var pool = fieldMask == null ? this.pool : of(clazz).pool;
+        if (pool != null) {
+            // pooled messages are cleared, so their unread fields already have default values
+            var message = pool.acquire();
+            readFields(message, stream, source);
+            return message;
+        }
+        var message = newMessage();
+        CodecMetrics.defaultsFilled(clazz, absentDefaults.apply(message, readFields(message, stream, source)));
+        return message;
+    }
+
+    /**
+     * Read fields from the stream into the message, up to the end of the stream or its current limit.
+     *
+     * @return the fields that were read, bit {@code i} standing for the field at index {@code i}
+     */
+    private long readFields(T message, CodedInputStream stream, ByteString source) throws IOException {
+        var dispatch = this.dispatch;
+        long visited = 0;
+        // the index of the field read last, from which the next one is predicted
+        int last = -1;
+        while (!stream.isAtEnd()) {
+            // where an unknown field starts, tag included
+            int start = stream.getTotalBytesRead();
+            var tag = stream.readTag();
+            var fieldNumber = WireFormat.getTagFieldNumber(tag);
+            int index = dispatch.indexOf(fieldNumber, last);
+            if (index < 0) {
+                CodecMetrics.unknownField(clazz);
+                if (fieldMask != null) {
                     stream.skipField(tag);
-                    continue;
+                } else {
+                    readUnknownField(message, stream, source, tag, start);
                 }
-                visitedSet.add(fieldNumber);
-                fieldDescriptor.deserialize(message, stream, wireType);
+                continue;
             }
-
-            for (var fieldDescriptor : fieldDescriptors) {
-                if (!visitedSet.contains(fieldDescriptor.fieldNumber())) {
-                    setDefaultValueFor(message, fieldDescriptor);
+            if (codec != null) {
+                if (!codec.readField(message, stream, source, tag)) {
+                    // a wire type the codec does not expect for the field
+                    CodecMetrics.unknownField(clazz);
+                    readUnknownField(message, stream, source, tag, start);
+                    continue;
                 }
+            } else {
+                dispatch.deserializerAt(index).deserialize(message, stream, source, WireFormat.getTagWireType(tag));
+            }
+            last = index;
+            if (index < Long.SIZE) {
+                visited |= 1L << index;
             }
-
-            return message;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
         }
+        return visited;
     }
 }
@@ -1,37 +1,108 @@
 package org.lagrangecore.proto;
 
 import com.google.protobuf.CodedOutputStream;
-import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.lagrangecore.proto.annotations.ProtoField;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 public final class ProtobufSerializer<T extends ProtoMessage> {
-    private static final ConcurrentMap<Class<?>, ProtobufSerializer<? extends ProtoMessage>> serializers
-            = new ConcurrentHashMap<>();
+    private static final CodecRegistry<ProtobufSerializer<?>> serializers
+            = new CodecRegistry<>(ProtobufSerializer::create);
 
+    /**
+     * Whether to define a hidden class encoder for message classes without a generated codec. Set the system
+     * property {@code org.lagrangecore.proto.hiddenClasses} to {@code false} to use the reflective path instead.
+     * Never done in a GraalVM native image, which cannot define classes at runtime.
+     */
+    private static final boolean USE_HIDDEN_CLASSES
+            = Boolean.parseBoolean(System.getProperty("org.lagrangecore.proto.hiddenClasses", "true"))
+            && System.getProperty("org.graalvm.nativeimage.imagecode") == null;
+
+    private final Class<T> clazz;
     private final List<ProtoFieldDescriptor> fieldDescriptors = new ArrayList<>();
     private final List<ProtoFieldSerializer> fieldSerializers = new ArrayList<>();
+    private final @Nullable ProtoEncoder<T> encoder;
+
+    /**
+     * The accessors of the fields, parallel to {@link #fieldDescriptors}.
+     */
+    private final ProtoFieldAccessor[] fieldAccessors;
+
+    /**
+     * The fields of a class with a generated codec, described on first use by the single-pass encoder.
+     */
+    private volatile @Nullable CodecFields codecFields;
+
+    private record CodecFields(List<ProtoFieldDescriptor> descriptors, ProtoFieldAccessor[] accessors) {
+    }
 
     private ProtobufSerializer(Class<T> clazz) {
         if (!ProtoMessage.class.isAssignableFrom(clazz)) {
             throw new IllegalArgumentException("Class " + clazz.getName() + " is not a ProtoMessage");
         }
+        this.clazz = clazz;
+
+        var codec = ProtoCodec.lookup(clazz);
+        if (codec != null) {
+            encoder = codec;
+            fieldAccessors = new ProtoFieldAccessor[0];
+            return;
+        }
+
+        fieldDescriptors.addAll(describeFields(clazz));
+        fieldAccessors = ProtoFieldAccessor.of(fieldDescriptors);
+        encoder = USE_HIDDEN_CLASSES ? defineEncoder(clazz, fieldDescriptors) : null;
+        if (encoder == null) {
+            for (var fieldDescriptor : fieldDescriptors) {
+                fieldSerializers.add(ProtoFieldSerializer.create(fieldDescriptor));
+            }
+        }
+    }
 
-        var fields = clazz.getDeclaredFields();
-        for (var field : fields) {
+    @SuppressWarnings("unchecked")
+    private static ProtobufSerializer<?> create(Class<?> clazz) {
+        var event = CodecMetrics.buildEvent();
+        var serializer = new ProtobufSerializer<>((Class<ProtoMessage>) clazz);
+        if (event != null) {
+            if (serializer.encoder instanceof ProtoCodec<?>) {
+                CodecEvents.commitBuild(event, clazz, "serializer", "generated codec", describeFields(clazz).size());
+            } else {
+                var implementation = serializer.encoder != null ? "hidden class" : "reflection";
+                CodecEvents.commitBuild(event, clazz, "serializer", implementation, serializer.fieldDescriptors.size());
+            }
+        }
+        return serializer;
+    }
+
+    private static List<ProtoFieldDescriptor> describeFields(Class<?> clazz) {
+        var descriptors = new ArrayList<ProtoFieldDescriptor>();
+        for (var field : clazz.getDeclaredFields()) {
             var protoField = field.getAnnotation(ProtoField.class);
             if (protoField != null) {
-                var fieldDescriptor = ProtoFieldDescriptor.fromField(field, protoField);
-                fieldDescriptors.add(fieldDescriptor);
-                fieldSerializers.add(ProtoFieldSerializer.create(fieldDescriptor));
+                descriptors.add(ProtoFieldDescriptor.fromField(field, protoField));
             }
         }
+        return descriptors;
+    }
+
+    private static <T extends ProtoMessage> @Nullable ProtoEncoder<T> defineEncoder(
+            Class<T> clazz, List<ProtoFieldDescriptor> fieldDescriptors) {
+        try {
+            return EncoderGenerator.generate(clazz, fieldDescriptors);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            return null;
+        }
     }
 
     /**
@@ -43,24 +114,39 @@ public final class ProtobufSerializer<T extends ProtoMessage> {
      */
     @SuppressWarnings("unchecked")
     public static <T extends ProtoMessage> ProtobufSerializer<T> of(Class<T> clazz) {
-        if (!serializers.containsKey(clazz)) {
-            serializers.putIfAbsent(clazz, new ProtobufSerializer<>(clazz));
-        }
         return (ProtobufSerializer<T>) serializers.get(clazz);
     }
 
-    int computeSize(@NotNull T message) throws IllegalAccessException {
-        if (message.serializedSize > 0) {
-            return message.serializedSize;
+    /**
+     * Get the serializer of a nested message class, created on first use rather than along with the serializer of
+     * the enclosing class.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends ProtoMessage> Supplier<ProtobufSerializer<T>> nested(Class<T> clazz) {
+        return (Supplier<ProtobufSerializer<T>>) (Supplier<?>) serializers.entry(clazz);
+    }
+
+    int computeSize(@NotNull T message, SizeStack sizes) {
+        var frozenSizes = message.frozenSizes;
+        if (frozenSizes != null) {
+            return sizes.restore(frozenSizes);
         }
 
-        if (message.lengthDelimitedFieldSizes == null) {
-            message.lengthDelimitedFieldSizes = new Int2IntArrayMap();
+        int from = sizes.top();
+        var unknownFields = message.unknownFields;
+        int size = unknownFields == null ? 0 : unknownFields.size();
+        if (encoder != null) {
+            size += encoder.computeSize(message, sizes);
+        } else {
+            var accessors = fieldAccessors;
+            for (int i = 0; i < accessors.length; i++) {
+                size += fieldDescriptors.get(i).computeSerializedSize(message, accessors[i], sizes);
+            }
         }
-        for (var fieldDescriptor : fieldDescriptors) {
-            fieldDescriptor.computeSerializedSize(message);
+        if (message.frozen) {
+            message.frozenSizes = sizes.snapshot(size, from);
         }
-        return message.serializedSize;
+        return size;
     }
 
     /**
@@ -70,21 +156,326 @@ public final class ProtobufSerializer<T extends ProtoMessage> {
      * @return the serialized message
      */
     public byte[] serialize(T message) {
+        var event = CodecMetrics.serializeEvent();
+        long start = CodecMetrics.start(event);
+        var buffer = serialize0(message);
+        CodecMetrics.encoded(clazz, buffer.length, start, event);
+        return buffer;
+    }
+
+    /**
+     * Serialize a protobuf message to a byte array without reporting it to the metrics, e.g. to warm the serializer
+     * up.
+     */
+    byte[] serialize0(T message) {
+        var sizes = SizeStack.acquire();
         try {
-            var buffer = new byte[computeSize(message)];
+            var buffer = new byte[computeSize(message, sizes)];
             var stream = CodedOutputStream.newInstance(buffer);
-            for (var fieldSerializer : fieldSerializers) {
-                fieldSerializer.serialize(message, stream);
-            }
+            serialize(message, stream, sizes);
             return buffer;
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            sizes.release();
+        }
+    }
+
+    /**
+     * Serialize a protobuf message to a byte array in a single traversal.
+     * <p>
+     * {@link #serialize(ProtoMessage)} walks the message twice, once to compute its size and once to write it. This
+     * method writes into a growable buffer instead, and fills in the length of every nested message and packed field
+     * once it has been written. It suits messages that are serialized only once and encoded through reflection, as
+     * when hidden classes are disabled. Generated codecs and hidden class encoders compute sizes without reflection,
+     * so {@link #serialize(ProtoMessage)} is usually faster for them, as it is for frozen messages.
+     *
+     * @param message the message to serialize
+     * @return the serialized message
+     */
+    public byte[] serializeSinglePass(T message) {
+        var event = CodecMetrics.serializeEvent();
+        long start = CodecMetrics.start(event);
+        var output = SinglePassOutput.acquire();
+        try {
+            writeSinglePass(message, output);
+            var bytes = output.release();
+            CodecMetrics.encoded(clazz, bytes.length, start, event);
+            return bytes;
+        } catch (RuntimeException e) {
+            output.discard();
+            throw e;
+        }
+    }
+
+    void writeSinglePass(@NotNull T message, SinglePassOutput output) {
+        var descriptors = fieldDescriptors;
+        var accessors = fieldAccessors;
+        if (encoder instanceof ProtoCodec<T>) {
+            var fields = codecFields;
+            if (fields == null) {
+                var described = describeFields(clazz);
+                codecFields = fields = new CodecFields(described, ProtoFieldAccessor.of(described));
+            }
+            descriptors = fields.descriptors();
+            accessors = fields.accessors();
+        }
+        for (int i = 0; i < accessors.length; i++) {
+            descriptors.get(i).writeSinglePass(message, accessors[i], output);
+        }
+        var unknownFields = message.unknownFields;
+        if (unknownFields != null) {
+            output.writeRawBytes(unknownFields);
+        }
+    }
+
+    /**
+     * Compute the serialized size of a protobuf message.
+     *
+     * @param message the message
+     * @return the number of bytes {@link #serialize(ProtoMessage)} would produce
+     */
+    public int sizeOf(T message) {
+        var sizes = SizeStack.acquire();
+        try {
+            return computeSize(message, sizes);
+        } finally {
+            sizes.release();
+        }
+    }
+
+    /**
+     * Serialize a protobuf message into a caller-supplied byte array.
+     *
+     * @param message the message to serialize
+     * @param buffer  the array to write to
+     * @param offset  the index of the first byte to write
+     * @return the number of bytes written
+     * @throws IndexOutOfBoundsException if the message does not fit in the array from {@code offset}
+     */
+    public int serializeTo(T message, byte[] buffer, int offset) {
+        var event = CodecMetrics.serializeEvent();
+        long start = CodecMetrics.start(event);
+        var sizes = SizeStack.acquire();
+        try {
+            int size = computeSize(message, sizes);
+            Objects.checkFromIndexSize(offset, size, buffer.length);
+            var stream = CodedOutputStream.newInstance(buffer, offset, size);
+            serialize(message, stream, sizes);
+            stream.checkNoSpaceLeft();
+            CodecMetrics.encoded(clazz, size, start, event);
+            return size;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            sizes.release();
+        }
+    }
+
+    /**
+     * Serialize a protobuf message into a heap or direct buffer, starting at its position. The position is advanced
+     * past the written bytes.
+     *
+     * @param message the message to serialize
+     * @param buffer  the buffer to write to
+     * @return the number of bytes written
+     * @throws BufferOverflowException if the message does not fit in the remaining bytes of the buffer
+     */
+    public int serializeTo(T message, ByteBuffer buffer) {
+        var event = CodecMetrics.serializeEvent();
+        long start = CodecMetrics.start(event);
+        var sizes = SizeStack.acquire();
+        try {
+            int size = computeSize(message, sizes);
+            if (buffer.remaining() < size) {
+                throw new BufferOverflowException();
+            }
+            var stream = CodedOutputStream.newInstance(buffer);
+            serialize(message, stream, sizes);
+            stream.flush();
+            CodecMetrics.encoded(clazz, size, start, event);
+            return size;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            sizes.release();
+        }
+    }
+
+    /**
+     * Serialize messages into a single array, each preceded by its size as a varint, the way
+     * {@link #writeDelimitedTo(ProtoMessage, OutputStream)} writes them one by one.
+     *
+     * @param messages the messages to serialize
+     * @return the serialized messages, with the offset of each one
+     * @throws IllegalArgumentException if the batch is larger than 2 GiB
+     */
+    public DelimitedBatch serializeBatch(List<T> messages) {
+        var event = CodecMetrics.serializeEvent();
+        long start = CodecMetrics.start(event);
+        var sizes = SizeStack.acquire();
+        int[] offsets;
+        byte[] buffer;
+        try {
+            offsets = computeBatchSizes(messages, sizes, 0);
+            buffer = new byte[offsets[offsets.length - 1]];
+            var stream = CodedOutputStream.newInstance(buffer);
+            serializeBatch(messages, stream, sizes);
+            stream.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            sizes.release();
+        }
+        CodecMetrics.encoded(clazz, buffer.length, start, event);
+        return new DelimitedBatch(buffer, offsets);
+    }
+
+    /**
+     * Serialize messages into a heap or direct buffer, starting at its position, each preceded by its size as a
+     * varint. The position is advanced past the written bytes. The messages are iterated twice, once to compute
+     * their sizes and once to write them, and must be the same both times.
+     *
+     * @param messages the messages to serialize
+     * @param buffer   the buffer to write to
+     * @return the position in the buffer where each message starts, at its size, followed by the position after the
+     * last one
+     * @throws BufferOverflowException  if the messages do not fit in the remaining bytes of the buffer, in which case
+     *                                  nothing is written
+     * @throws IllegalArgumentException if the batch is larger than 2 GiB
+     */
+    public int[] serializeBatchTo(Iterable<T> messages, ByteBuffer buffer) {
+        var event = CodecMetrics.serializeEvent();
+        long start = CodecMetrics.start(event);
+        var sizes = SizeStack.acquire();
+        int[] offsets;
+        int size;
+        try {
+            offsets = computeBatchSizes(messages, sizes, buffer.position());
+            size = offsets[offsets.length - 1] - buffer.position();
+            if (buffer.remaining() < size) {
+                throw new BufferOverflowException();
+            }
+            var stream = CodedOutputStream.newInstance(buffer);
+            serializeBatch(messages, stream, sizes);
+            stream.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            sizes.release();
+        }
+        CodecMetrics.encoded(clazz, size, start, event);
+        return offsets;
+    }
+
+    /**
+     * Compute the sizes of a batch of delimited messages. The size of each message is recorded before the sizes
+     * nested in it, to be written as its prefix.
+     *
+     * @param from the offset of the first message
+     * @return the offset of each message, followed by the offset after the last one
+     */
+    private int[] computeBatchSizes(Iterable<T> messages, SizeStack sizes, int from) {
+        var offsets = new IntArrayList(messages instanceof List<T> list ? list.size() + 1 : 16);
+        long offset = from;
+        for (var message : messages) {
+            offsets.add((int) offset);
+            int slot = sizes.reserve();
+            int size = computeSize(message, sizes);
+            sizes.set(slot, size);
+            offset += CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Batch of " + clazz.getName() + " is larger than 2 GiB");
+            }
         }
+        offsets.add((int) offset);
+        return offsets.toIntArray();
+    }
+
+    private void serializeBatch(Iterable<T> messages, CodedOutputStream stream, SizeStack sizes) throws IOException {
+        for (var message : messages) {
+            stream.writeUInt32NoTag(sizes.next());
+            serialize(message, stream, sizes);
+        }
+    }
+
+    /**
+     * Write a protobuf message to an output stream. The message is encoded through a bounded buffer that is reused
+     * across calls on the same thread, so the whole encoding is never held in memory at once.
+     * The output stream is not flushed.
+     *
+     * @param message the message to write
+     * @param out     the output stream
+     */
+    public void writeTo(T message, OutputStream out) throws IOException {
+        writeTo(message, StreamSink.of(out), false);
     }
 
-    void serialize(@NotNull T message, CodedOutputStream stream) throws IOException, IllegalAccessException {
-        for (var fieldSerializer : fieldSerializers) {
-            fieldSerializer.serialize(message, stream);
+    /**
+     * Write a protobuf message to a channel, the same way as {@link #writeTo(ProtoMessage, OutputStream)}.
+     * The channel must be in blocking mode.
+     *
+     * @param message the message to write
+     * @param channel the channel
+     */
+    public void writeTo(T message, WritableByteChannel channel) throws IOException {
+        writeTo(message, StreamSink.of(channel), false);
+    }
+
+    /**
+     * Write a protobuf message to an output stream, preceded by its size as a varint. This is the framing used by
+     * {@code writeDelimitedTo} of protobuf-java.
+     *
+     * @param message the message to write
+     * @param out     the output stream
+     */
+    public void writeDelimitedTo(T message, OutputStream out) throws IOException {
+        writeTo(message, StreamSink.of(out), true);
+    }
+
+    /**
+     * Write a protobuf message to a channel, preceded by its size as a varint.
+     * The channel must be in blocking mode.
+     *
+     * @param message the message to write
+     * @param channel the channel
+     */
+    public void writeDelimitedTo(T message, WritableByteChannel channel) throws IOException {
+        writeTo(message, StreamSink.of(channel), true);
+    }
+
+    private void writeTo(T message, StreamSink sink, boolean delimited) throws IOException {
+        var event = CodecMetrics.serializeEvent();
+        long start = CodecMetrics.start(event);
+        boolean completed = false;
+        var sizes = SizeStack.acquire();
+        try {
+            int size = computeSize(message, sizes);
+            if (delimited) {
+                sink.stream.writeUInt32NoTag(size);
+            }
+            serialize(message, sink.stream, sizes);
+            sink.stream.flush();
+            completed = true;
+            int written = delimited ? CodedOutputStream.computeUInt32SizeNoTag(size) + size : size;
+            CodecMetrics.encoded(clazz, written, start, event);
+        } finally {
+            sizes.release();
+            sink.release(completed);
+        }
+    }
+
+    void serialize(@NotNull T message, CodedOutputStream stream, SizeStack sizes) throws IOException {
+        if (encoder != null) {
+            encoder.serialize(message, stream, sizes);
+        } else {
+            for (var fieldSerializer : fieldSerializers) {
+                fieldSerializer.serialize(message, stream, sizes);
+            }
+        }
+        var unknownFields = message.unknownFields;
+        if (unknownFields != null) {
+            stream.writeRawBytes(unknownFields);
         }
     }
 }
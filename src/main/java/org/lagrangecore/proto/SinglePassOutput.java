@@ -0,0 +1,196 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer that encodes a message in a single traversal, without computing its size first.
+ * <p>
+ * The length prefix of a nested message, packed field or string is not known when it starts, so room is reserved
+ * for the longest prefix its content can need. Once the content is written, the prefix is patched in, and the content
+ * is moved back over the unused room if the prefix turned out shorter.
+ */
+final class SinglePassOutput {
+    private static final int MAX_VARINT32_SIZE = 5;
+    private static final int MAX_VARINT64_SIZE = 10;
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The largest buffer kept for the next serialization on the same thread; bigger ones are dropped after use.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<SinglePassOutput> OUTPUTS = ThreadLocal.withInitial(SinglePassOutput::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int position = 0;
+    private boolean inUse = false;
+
+    private SinglePassOutput() {
+    }
+
+    static SinglePassOutput acquire() {
+        var output = OUTPUTS.get();
+        if (output.inUse) {
+            output = new SinglePassOutput();
+        }
+        output.inUse = true;
+        return output;
+    }
+
+    /**
+     * Copy out the bytes written so far, and make the buffer available to the next serialization on this thread.
+     */
+    byte[] release() {
+        var result = Arrays.copyOf(buffer, position);
+        position = 0;
+        inUse = false;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        return result;
+    }
+
+    void discard() {
+        position = 0;
+        inUse = false;
+    }
+
+    private void ensure(int count) {
+        if (buffer.length - position < count) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + count));
+        }
+    }
+
+    void writeTag(int fieldNumber, int wireType) {
+        writeUInt32((fieldNumber << 3) | wireType);
+    }
+
+    void writeInt32(int value) {
+        if (value >= 0) {
+            writeUInt32(value);
+        } else {
+            writeUInt64(value);
+        }
+    }
+
+    void writeUInt32(int value) {
+        ensure(MAX_VARINT32_SIZE);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeUInt64(long value) {
+        ensure(MAX_VARINT64_SIZE);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeFixed32(int value) {
+        ensure(Integer.BYTES);
+        buffer[position++] = (byte) value;
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) (value >> 16);
+        buffer[position++] = (byte) (value >> 24);
+    }
+
+    void writeFixed64(long value) {
+        writeFixed32((int) value);
+        writeFixed32((int) (value >> 32));
+    }
+
+    void writeBytes(byte[] value) {
+        writeUInt32(value.length);
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+    }
+
+    void writeBytes(ByteString value) {
+        writeUInt32(value.size());
+        writeRawBytes(value);
+    }
+
+    void writeRawBytes(ByteString value) {
+        int length = value.size();
+        ensure(length);
+        value.copyTo(buffer, position);
+        position += length;
+    }
+
+    /**
+     * Write a string as UTF-8, preceded by its encoded length. Unpaired surrogates are replaced by {@code '?'}, the
+     * same as {@link String#getBytes(java.nio.charset.Charset)} does.
+     */
+    void writeString(String value) {
+        int length = value.length();
+        // a UTF-16 unit takes at most 3 bytes
+        int start = beginLengthDelimited(length * 3);
+        ensure(length * 3);
+        var buffer = this.buffer;
+        int position = this.position;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >>> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                buffer[position++] = (byte) (0xE0 | (c >>> 12));
+                buffer[position++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >>> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buffer[position++] = '?';
+            }
+        }
+        this.position = position;
+        endLengthDelimited(start);
+    }
+
+    /**
+     * Reserve room for a length prefix.
+     *
+     * @param maxLength the largest length the content can have, or {@code -1} if unknown
+     * @return the position the content starts at, to be passed to {@link #endLengthDelimited(int)}
+     */
+    int beginLengthDelimited(int maxLength) {
+        int prefixSize = maxLength < 0 ? MAX_VARINT32_SIZE : CodedOutputStream.computeUInt32SizeNoTag(maxLength);
+        ensure(prefixSize);
+        position += prefixSize;
+        // the reserved room remembers its own size until the prefix is patched in
+        buffer[position - 1] = (byte) prefixSize;
+        return position;
+    }
+
+    /**
+     * Patch the length prefix of the content written since {@link #beginLengthDelimited(int)}.
+     */
+    void endLengthDelimited(int start) {
+        int reserved = buffer[start - 1];
+        int length = position - start;
+        int prefix = start - reserved;
+        int prefixSize = CodedOutputStream.computeUInt32SizeNoTag(length);
+        if (prefixSize < reserved) {
+            System.arraycopy(buffer, start, buffer, prefix + prefixSize, length);
+        }
+        position = prefix;
+        writeUInt32(length);
+        position += length;
+    }
+}
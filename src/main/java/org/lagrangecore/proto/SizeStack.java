@@ -0,0 +1,101 @@
+package org.lagrangecore.proto;
+
+import java.util.Arrays;
+
+/**
+ * The sizes computed while serializing one message: the length of every nested message and every packed field, in
+ * the order they are written.
+ * <p>
+ * The size pass records the sizes, reserving the slot of a nested message before computing it, and the write pass
+ * reads them back in the same order. Keeping them here instead of on the messages makes it safe to serialize the
+ * same message from several threads at once. Each thread reuses one stack from serialization to serialization, and
+ * takes a new one if it serializes again while its stack is in use.
+ */
+public final class SizeStack {
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The largest stack kept for the next serialization on the same thread; bigger ones are dropped after use.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<SizeStack> STACKS = ThreadLocal.withInitial(SizeStack::new);
+
+    private int[] sizes = new int[INITIAL_CAPACITY];
+    private int top = 0;
+    private int cursor = 0;
+    private boolean inUse = false;
+
+    private SizeStack() {
+    }
+
+    /**
+     * Get an empty stack for a serialization, to be {@linkplain #release() released} once it is done.
+     */
+    static SizeStack acquire() {
+        var stack = STACKS.get();
+        if (stack.inUse) {
+            stack = new SizeStack();
+        }
+        stack.top = 0;
+        stack.cursor = 0;
+        stack.inUse = true;
+        return stack;
+    }
+
+    /**
+     * Make the stack available to the next serialization on this thread.
+     */
+    void release() {
+        inUse = false;
+        if (sizes.length > MAX_RETAINED_CAPACITY) {
+            sizes = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    int reserve() {
+        if (top == sizes.length) {
+            sizes = Arrays.copyOf(sizes, top * 2);
+        }
+        return top++;
+    }
+
+    void set(int slot, int size) {
+        sizes[slot] = size;
+    }
+
+    void push(int size) {
+        set(reserve(), size);
+    }
+
+    int next() {
+        return sizes[cursor++];
+    }
+
+    int top() {
+        return top;
+    }
+
+    /**
+     * Copy the sizes recorded from {@code from} on, preceded by the given size of the message they belong to.
+     */
+    int[] snapshot(int size, int from) {
+        var snapshot = new int[top - from + 1];
+        snapshot[0] = size;
+        System.arraycopy(sizes, from, snapshot, 1, top - from);
+        return snapshot;
+    }
+
+    /**
+     * Record the sizes of a snapshot, and return the size of the message they belong to.
+     */
+    int restore(int[] snapshot) {
+        int count = snapshot.length - 1;
+        if (top + count > sizes.length) {
+            sizes = Arrays.copyOf(sizes, Math.max(sizes.length * 2, top + count));
+        }
+        System.arraycopy(snapshot, 1, sizes, top, count);
+        top += count;
+        return snapshot[0];
+    }
+}
@@ -0,0 +1,78 @@
+package org.lagrangecore.proto;
+
+import com.google.protobuf.CodedOutputStream;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Forwards the output of a {@link CodedOutputStream} to the stream or channel of the current write, so that streaming
+ * serialization goes through one bounded buffer per thread however big the message is.
+ * <p>
+ * Writes larger than the buffer, such as big {@code byte[]} fields, bypass it and are forwarded directly.
+ */
+final class StreamSink extends OutputStream {
+    private static final int BUFFER_SIZE = 8192;
+    private static final ThreadLocal<StreamSink> SINKS = ThreadLocal.withInitial(StreamSink::new);
+
+    final CodedOutputStream stream = CodedOutputStream.newInstance(this, BUFFER_SIZE);
+    private @Nullable OutputStream out;
+    private @Nullable WritableByteChannel channel;
+
+    private StreamSink() {
+    }
+
+    static StreamSink of(OutputStream out) {
+        var sink = acquire();
+        sink.out = out;
+        return sink;
+    }
+
+    static StreamSink of(WritableByteChannel channel) {
+        var sink = acquire();
+        sink.channel = channel;
+        return sink;
+    }
+
+    private static StreamSink acquire() {
+        var sink = SINKS.get();
+        // the target stream may itself serialize messages on this thread
+        return sink.out == null && sink.channel == null ? sink : new StreamSink();
+    }
+
+    /**
+     * Detach the sink from its target.
+     *
+     * @param completed whether the write completed; otherwise the buffer may hold stale bytes and is dropped
+     */
+    void release(boolean completed) {
+        out = null;
+        channel = null;
+        if (!completed && SINKS.get() == this) {
+            SINKS.remove();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (out != null) {
+            out.write(b, off, len);
+            return;
+        }
+        if (channel == null) {
+            throw new IllegalStateException("Sink is not attached");
+        }
+        var buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
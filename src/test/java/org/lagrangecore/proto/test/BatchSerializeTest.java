@@ -0,0 +1,65 @@
+package org.lagrangecore.proto.test;
+
+import com.google.protobuf.CodedInputStream;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests serializing messages as a batch and finding each of them by its offset.
+ */
+public final class BatchSerializeTest {
+    public static void main(String[] args) throws IOException {
+        var serializer = ProtobufSerializer.of(GeneralTestMessage.class);
+        var deserializer = ProtobufDeserializer.of(GeneralTestMessage.class);
+        var messages = new ArrayList<GeneralTestMessage>();
+        for (int i = 0; i < 20; i++) {
+            messages.add(GeneralTestMessage.builder()
+                    .intField(i)
+                    .stringField("x".repeat(i * 10))
+                    .intListField(IntList.of(i, i + 1))
+                    .doubleListField(DoubleList.of())
+                    .nestedMessageField(List.of())
+                    .build());
+        }
+
+        var batch = serializer.serializeBatch(messages);
+        var out = new ByteArrayOutputStream();
+        for (var message : messages) {
+            serializer.writeDelimitedTo(message, out);
+        }
+        if (!Arrays.equals(out.toByteArray(), batch.bytes())) {
+            throw new AssertionError("Expected the bytes written by writeDelimitedTo");
+        }
+        if (batch.count() != messages.size() || batch.offsets()[batch.count()] != batch.bytes().length) {
+            throw new AssertionError("Unexpected offsets " + Arrays.toString(batch.offsets()));
+        }
+
+        for (int i = 0; i < batch.count(); i++) {
+            int from = batch.offsets()[i];
+            int to = batch.offsets()[i + 1];
+            var stream = CodedInputStream.newInstance(batch.bytes(), from, to - from);
+            int size = stream.readRawVarint32();
+            if (stream.getTotalBytesRead() + size != to - from) {
+                throw new AssertionError("Expected message " + i + " to end at offset " + to);
+            }
+            var decoded = deserializer.deserialize(Arrays.copyOfRange(batch.bytes(), to - size, to));
+            if (!messages.get(i).toString().equals(String.valueOf(decoded))) {
+                throw new AssertionError("Expected " + messages.get(i) + " at offset " + i + " but got " + decoded);
+            }
+        }
+        System.out.println("Offsets: " + Arrays.toString(batch.offsets()));
+
+        var empty = serializer.serializeBatch(List.of());
+        if (empty.count() != 0 || empty.bytes().length != 0) {
+            throw new AssertionError("Expected an empty batch");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.lagrangecore.proto.test;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+/**
+ * Tests the serialization and deserialization of private and final fields.
+ */
+public final class FieldAccessTest {
+    public static void main(String[] args) {
+        var initialMessage = new FieldAccessTestMessage(42, "Hello, World!", 1L << 40);
+        initialMessage.getPrivateFinalIntListField().addAll(IntList.of(1, 2, 3));
+
+        var serialized = ProtobufSerializer.of(FieldAccessTestMessage.class).serialize(initialMessage);
+        var deserialized = ProtobufDeserializer.of(FieldAccessTestMessage.class).deserialize(serialized);
+
+        System.out.println("Deserialized message: " + deserialized);
+        if (!initialMessage.toString().equals(deserialized.toString())) {
+            throw new AssertionError("Expected " + initialMessage + " but got " + deserialized);
+        }
+    }
+}
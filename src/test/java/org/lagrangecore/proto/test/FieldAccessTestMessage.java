@@ -0,0 +1,33 @@
+package org.lagrangecore.proto.test;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import lombok.Getter;
+import lombok.ToString;
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.annotations.ProtoField;
+
+@Getter @ToString
+public class FieldAccessTestMessage extends ProtoMessage {
+    @ProtoField(1)
+    private int privateIntField;
+
+    @ProtoField(2)
+    private String privateStringField;
+
+    @ProtoField(3)
+    private final IntList privateFinalIntListField = new IntArrayList();
+
+    @ProtoField(4)
+    final long finalLongField;
+
+    public FieldAccessTestMessage() {
+        this.finalLongField = 0;
+    }
+
+    public FieldAccessTestMessage(int privateIntField, String privateStringField, long finalLongField) {
+        this.privateIntField = privateIntField;
+        this.privateStringField = privateStringField;
+        this.finalLongField = finalLongField;
+    }
+}
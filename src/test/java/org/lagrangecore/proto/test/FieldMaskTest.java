@@ -0,0 +1,49 @@
+package org.lagrangecore.proto.test;
+
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+import java.util.List;
+
+/**
+ * Tests that a deserializer made with {@code withFields} decodes only the selected fields.
+ */
+public final class FieldMaskTest {
+    public static void main(String[] args) {
+        var initialMessage = GeneralTestMessage.builder()
+                .intField(42)
+                .doubleField(0.5)
+                .stringField("Hello, World!")
+                .booleanField(true)
+                .intListField(IntList.of(1, 2, 3))
+                .doubleListField(DoubleList.of(0.1, 0.2))
+                .nestedMessageField(List.of(GeneralTestMessage.NestedMessage.builder()
+                        .nestedStringListField(List.of("Hello", "World"))
+                        .build()))
+                .build();
+        var serialized = ProtobufSerializer.of(GeneralTestMessage.class).serialize(initialMessage);
+
+        var deserialized = ProtobufDeserializer.of(GeneralTestMessage.class).withFields(1, 3).deserialize(serialized);
+        System.out.println("Deserialized message: " + deserialized);
+        if (deserialized.intField != 42 || !"Hello, World!".equals(deserialized.stringField)) {
+            throw new AssertionError("Expected the selected fields to be decoded but got " + deserialized);
+        }
+        if (deserialized.doubleField != 0 || deserialized.booleanField || deserialized.intListField != null
+                || deserialized.doubleListField != null || deserialized.nestedMessageField != null) {
+            throw new AssertionError("Expected the other fields to be skipped but got " + deserialized);
+        }
+        if (!deserialized.getUnknownFields().isEmpty()) {
+            throw new AssertionError("Expected the skipped fields not to be kept but got "
+                    + deserialized.getUnknownFields().size() + " bytes");
+        }
+
+        try {
+            ProtobufDeserializer.of(GeneralTestMessage.class).withFields(99);
+            throw new AssertionError("Expected an undeclared field to be rejected");
+        } catch (IllegalArgumentException expected) {
+            System.out.println("Rejected: " + expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.lagrangecore.proto.test;
+
+import org.lagrangecore.proto.Lazy;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+import java.util.Arrays;
+
+/**
+ * Tests that a lazy field is written back out as it was read until it is decoded.
+ */
+public final class LazyFieldTest {
+    public static void main(String[] args) {
+        // intField = 1 as a two-byte varint, which encoding the message again would shorten, and stringField = "lazy"
+        var payload = new byte[]{0x08, (byte) 0x81, 0x00, 0x1a, 0x04, 'l', 'a', 'z', 'y'};
+        var data = new byte[4 + payload.length];
+        data[0] = 0x08;
+        data[1] = 0x07;
+        data[2] = 0x12;
+        data[3] = (byte) payload.length;
+        System.arraycopy(payload, 0, data, 4, payload.length);
+
+        var serializer = ProtobufSerializer.of(LazyTestMessage.class);
+        var deserializer = ProtobufDeserializer.of(LazyTestMessage.class);
+        var deserialized = deserializer.deserialize(data);
+        if (deserialized.payload.isDecoded()) {
+            throw new AssertionError("Expected an undecoded payload but got " + deserialized.payload);
+        }
+        var serialized = serializer.serialize(deserialized);
+        if (!Arrays.equals(data, serialized)) {
+            throw new AssertionError("Expected " + Arrays.toString(data) + " but got " + Arrays.toString(serialized));
+        }
+
+        var nested = deserialized.payload.get();
+        System.out.println("Deserialized message: " + deserialized);
+        if (nested.intField != 1 || !"lazy".equals(nested.stringField)) {
+            throw new AssertionError("Expected intField=1 and stringField=lazy but got " + nested);
+        }
+
+        var initialMessage = LazyTestMessage.builder()
+                .id(8)
+                .payload(Lazy.of(GeneralTestMessage.builder().stringField("eager").build()))
+                .build();
+        var roundTripped = deserializer.deserialize(serializer.serialize(initialMessage));
+        if (!"eager".equals(roundTripped.payload.get().stringField)) {
+            throw new AssertionError("Expected stringField=eager but got " + roundTripped.payload.get());
+        }
+    }
+}
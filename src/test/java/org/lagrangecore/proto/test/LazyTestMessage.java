@@ -0,0 +1,18 @@
+package org.lagrangecore.proto.test;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.lagrangecore.proto.Lazy;
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.annotations.ProtoField;
+
+@Builder @NoArgsConstructor @AllArgsConstructor @ToString
+public class LazyTestMessage extends ProtoMessage {
+    @ProtoField(1)
+    public int id;
+
+    @ProtoField(2)
+    public Lazy<GeneralTestMessage> payload;
+}
@@ -0,0 +1,64 @@
+package org.lagrangecore.proto.test;
+
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+import java.util.List;
+
+/**
+ * Tests deserializing into a message over and over, and clearing it.
+ */
+public final class MessageReuseTest {
+    public static void main(String[] args) {
+        var serializer = ProtobufSerializer.of(GeneralTestMessage.class);
+        var deserializer = ProtobufDeserializer.of(GeneralTestMessage.class);
+        var first = GeneralTestMessage.builder()
+                .intField(1)
+                .stringField("first")
+                .booleanField(true)
+                .intListField(IntList.of(1, 2, 3, 4))
+                .doubleListField(DoubleList.of(0.1))
+                .nestedMessageField(List.of(
+                        GeneralTestMessage.NestedMessage.builder().nestedStringListField(List.of("a")).build(),
+                        GeneralTestMessage.NestedMessage.builder().nestedStringListField(List.of("b")).build()))
+                .build();
+        var second = GeneralTestMessage.builder()
+                .intField(2)
+                .stringField("second")
+                .intListField(IntList.of(5))
+                .doubleListField(DoubleList.of())
+                .nestedMessageField(List.of(
+                        GeneralTestMessage.NestedMessage.builder().nestedStringListField(List.of("c")).build()))
+                .build();
+
+        var message = new GeneralTestMessage();
+        deserializer.deserializeInto(message, serializer.serialize(first));
+        assertEquals(first, message);
+        var intList = message.intListField;
+        var nestedList = message.nestedMessageField;
+
+        deserializer.deserializeInto(message, serializer.serialize(second));
+        System.out.println("Deserialized message: " + message);
+        assertEquals(second, message);
+        if (message.intListField != intList || message.nestedMessageField != nestedList) {
+            throw new AssertionError("Expected the lists to be reused");
+        }
+
+        deserializer.clear(message);
+        var cleared = GeneralTestMessage.builder()
+                .stringField("")
+                .intListField(IntList.of())
+                .doubleListField(DoubleList.of())
+                .nestedMessageField(List.of())
+                .build();
+        assertEquals(cleared, message);
+    }
+
+    private static void assertEquals(GeneralTestMessage expected, GeneralTestMessage actual) {
+        if (!expected.toString().equals(actual.toString())) {
+            throw new AssertionError("Expected " + expected + " but got " + actual);
+        }
+    }
+}
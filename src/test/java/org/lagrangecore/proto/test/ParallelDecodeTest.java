@@ -0,0 +1,56 @@
+package org.lagrangecore.proto.test;
+
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests deserializing delimited messages from a buffer in parallel.
+ */
+public final class ParallelDecodeTest {
+    public static void main(String[] args) {
+        var serializer = ProtobufSerializer.of(GeneralTestMessage.class);
+        var deserializer = ProtobufDeserializer.of(GeneralTestMessage.class);
+        var messages = new ArrayList<GeneralTestMessage>();
+        for (int i = 0; i < 5000; i++) {
+            messages.add(GeneralTestMessage.builder()
+                    .intField(i)
+                    .stringField("message " + i)
+                    .intListField(IntList.of(i))
+                    .doubleListField(DoubleList.of())
+                    .nestedMessageField(List.of())
+                    .build());
+        }
+        var bytes = serializer.serializeBatch(messages).bytes();
+
+        assertEquals(messages, deserializer.parallelStream(ByteBuffer.wrap(bytes)).toList());
+
+        var direct = ByteBuffer.allocateDirect(bytes.length + 3);
+        direct.put(new byte[]{1, 2, 3}).put(bytes).position(3);
+        assertEquals(messages, deserializer.parallelStream(direct).toList());
+        if (direct.position() != 3) {
+            throw new AssertionError("Expected the position to be left unchanged");
+        }
+
+        if (deserializer.parallelStream(ByteBuffer.allocate(0)).count() != 0) {
+            throw new AssertionError("Expected no messages");
+        }
+        System.out.println("Deserialized " + messages.size() + " messages in order");
+    }
+
+    private static void assertEquals(List<GeneralTestMessage> expected, List<GeneralTestMessage> actual) {
+        if (expected.size() != actual.size()) {
+            throw new AssertionError("Expected " + expected.size() + " messages but got " + actual.size());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!expected.get(i).toString().equals(actual.get(i).toString())) {
+                throw new AssertionError("Expected " + expected.get(i) + " at " + i + " but got " + actual.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.lagrangecore.proto.test;
+
+import org.lagrangecore.proto.ProtoCodecs;
+import org.lagrangecore.proto.ProtoMessagePool;
+import org.lagrangecore.proto.ProtobufDeserializer;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+/**
+ * Tests messages that contain their own class, directly or through another class, with and without the nested
+ * messages present.
+ */
+public final class RecursiveMessageTest {
+    public static void main(String[] args) {
+        ProtoCodecs.preload(RecursiveTestMessage.class);
+
+        var initialMessage = RecursiveTestMessage.builder()
+                .name("root")
+                .child(RecursiveTestMessage.builder().name("child").build())
+                .branch(RecursiveTestMessage.Branch.builder()
+                        .depth(1)
+                        .parent(RecursiveTestMessage.builder().name("parent").build())
+                        .build())
+                .build();
+
+        var serializer = ProtobufSerializer.of(RecursiveTestMessage.class);
+        var deserializer = ProtobufDeserializer.of(RecursiveTestMessage.class);
+        var deserialized = deserializer.deserialize(serializer.serialize(initialMessage));
+
+        System.out.println("Deserialized message: " + deserialized);
+        if (!initialMessage.toString().equals(deserialized.toString())) {
+            throw new AssertionError("Expected " + initialMessage + " but got " + deserialized);
+        }
+
+        var empty = deserializer.deserialize(new byte[0]);
+        if (empty.child != null || empty.branch != null) {
+            throw new AssertionError("Expected no nested messages but got " + empty);
+        }
+        deserializer.clear(deserialized);
+        if (!deserialized.name.isEmpty() || deserialized.child.child != null) {
+            throw new AssertionError("Expected a cleared message but got " + deserialized);
+        }
+
+        var pooled = ProtoMessagePool.of(RecursiveTestMessage.class).acquire();
+        if (pooled.child != null || pooled.branch != null) {
+            throw new AssertionError("Expected no nested messages but got " + pooled);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.lagrangecore.proto.test;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.annotations.ProtoField;
+
+@Builder @NoArgsConstructor @AllArgsConstructor @ToString
+public class RecursiveTestMessage extends ProtoMessage {
+    @ProtoField(1)
+    public String name;
+
+    @ProtoField(2)
+    public RecursiveTestMessage child;
+
+    @ProtoField(3)
+    public Branch branch;
+
+    @Builder @NoArgsConstructor @AllArgsConstructor @ToString
+    public static class Branch extends ProtoMessage {
+        @ProtoField(1)
+        public int depth;
+
+        @ProtoField(2)
+        public RecursiveTestMessage parent;
+    }
+}
@@ -0,0 +1,48 @@
+package org.lagrangecore.proto.test;
+
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.lagrangecore.proto.ProtoMessage;
+import org.lagrangecore.proto.ProtobufSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests that the single-pass encoder produces the same bytes as the two-pass one.
+ */
+public final class SinglePassTest {
+    public static void main(String[] args) {
+        var initialMessage = GeneralTestMessage.builder()
+                .intField(-42)
+                .doubleField(0.5)
+                .stringField("Hello, World!")
+                .booleanField(true)
+                .intListField(IntList.of(1, -2, 300, 70000))
+                .doubleListField(DoubleList.of(0.1, 0.2))
+                .nestedMessageField(List.of(
+                        GeneralTestMessage.NestedMessage.builder()
+                                .nestedStringListField(List.of("Hello", "World".repeat(40)))
+                                .build(),
+                        GeneralTestMessage.NestedMessage.builder()
+                                .nestedStringListField(List.of())
+                                .build()
+                ))
+                .build();
+        assertSameBytes(ProtobufSerializer.of(GeneralTestMessage.class), initialMessage);
+        assertSameBytes(ProtobufSerializer.of(GeneralTestMessage.class), new GeneralTestMessage());
+
+        var fieldAccessMessage = new FieldAccessTestMessage(42, "Hello, World!", 1L << 40);
+        fieldAccessMessage.getPrivateFinalIntListField().addAll(IntList.of(1, 2, 3));
+        assertSameBytes(ProtobufSerializer.of(FieldAccessTestMessage.class), fieldAccessMessage);
+    }
+
+    private static <T extends ProtoMessage> void assertSameBytes(ProtobufSerializer<T> serializer, T message) {
+        var expected = serializer.serialize(message);
+        var actual = serializer.serializeSinglePass(message);
+        System.out.println("Serialized " + actual.length + " bytes in a single pass");
+        if (!Arrays.equals(expected, actual)) {
+            throw new AssertionError("Expected " + Arrays.toString(expected) + " but got " + Arrays.toString(actual));
+        }
+    }
+}